@@ -0,0 +1,69 @@
+package com.github.dagr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Build throughput in keys per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BuildBenchmark.SIZE)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildBenchmark {
+    static final int SIZE = 100_000;
+
+    @Param({ "WORDS", "URLS", "BINARY" })
+    Datasets.Kind kind;
+
+    byte[][] keys;
+    byte[][] byteOutputs;
+
+    @Setup
+    public void setup() {
+        keys = Datasets.sortedKeys(kind, SIZE);
+        byteOutputs = new byte[SIZE][];
+        for (int i = 0; i < SIZE; i++) {
+            byteOutputs[i] = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public FST<byte[]> buildBytes() {
+        return new BytesFSTBuilder()
+                .build(IntStream.range(0, SIZE).mapToObj(i -> Map.entry(keys[i], byteOutputs[i])));
+    }
+
+    @Benchmark
+    public FST<Integer> buildIntegers() {
+        return new IntegerFSTBuilder().build(Arrays.stream(keys).map(key -> Map.entry(key, key.length)));
+    }
+
+    @Benchmark
+    public LongFST buildLongs() {
+        final var builder = new LongFSTBuilder();
+        for (int i = 0; i < SIZE; i++) {
+            builder.add(keys[i], i);
+        }
+        return builder.finish();
+    }
+}
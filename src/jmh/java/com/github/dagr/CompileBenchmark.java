@@ -0,0 +1,49 @@
+package com.github.dagr;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to compile an FST into a double array at growing sizes. The time per
+ * compile should roughly double with the size; a steeper growth means the
+ * search for free bases has become quadratic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class CompileBenchmark {
+    @Param({ "BINARY", "WORDS" })
+    Datasets.Kind kind;
+
+    @Param({ "100000", "200000", "400000", "800000" })
+    int size;
+
+    FST<Integer> fst;
+
+    @Setup
+    public void setup() {
+        fst = new IntegerFSTBuilder()
+                .build(Arrays.stream(Datasets.sortedKeys(kind, size)).map(key -> Map.entry(key, key.length)));
+    }
+
+    @Benchmark
+    public DoubleArrayFST<Integer> compile() {
+        return new DoubleArrayCompiler<Integer>().compile(fst);
+    }
+}
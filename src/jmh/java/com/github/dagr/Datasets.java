@@ -0,0 +1,87 @@
+package com.github.dagr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Reproducible synthetic keys for benchmarks.
+ */
+public final class Datasets {
+    public enum Kind {
+        /** Lowercase words built from syllables, sharing many prefixes and suffixes. */
+        WORDS,
+        /** URLs with a limited set of hosts and path segments, sharing long prefixes. */
+        URLS,
+        /** Uniformly random bytes, sharing little. */
+        BINARY,
+    }
+
+    private static final long SEED = 20190601L;
+
+    private static final String[] SYLLABLES = { "a", "ka", "sa", "ta", "na", "ha", "ma", "ya", "ra", "wa", "i", "ki",
+            "shi", "chi", "ni", "mi", "ri", "u", "ku", "su", "tsu", "nu", "mu", "yu", "ru", "e", "ke", "se", "te", "ne",
+            "me", "re", "o", "ko", "so", "to", "no", "mo", "yo", "ro", "n", "ing", "er", "ed", "ly", "tion" };
+
+    private static final String[] SEGMENTS = { "index", "search", "images", "news", "about", "api", "v1", "v2",
+            "users", "items", "docs", "static", "js", "css", "blog", "2019", "2020", "archive", "tag", "category" };
+
+    private Datasets() {
+    }
+
+    /**
+     * Returns {@code size} distinct keys of {@code kind} sorted in unsigned
+     * byte order. The same arguments always give the same keys.
+     */
+    static byte[][] sortedKeys(Kind kind, int size) {
+        final var random = new Random(SEED + kind.ordinal());
+        final TreeSet<byte[]> keys = new TreeSet<>(FSTBuilder::compare);
+        while (keys.size() < size) {
+            keys.add(nextKey(kind, random));
+        }
+        return keys.toArray(new byte[0][]);
+    }
+
+    /**
+     * Returns {@code keys} in a reproducible random order, for lookups.
+     */
+    static byte[][] shuffled(byte[][] keys) {
+        final List<byte[]> list = new ArrayList<>(Arrays.asList(keys));
+        Collections.shuffle(list, new Random(SEED));
+        return list.toArray(new byte[0][]);
+    }
+
+    private static byte[] nextKey(Kind kind, Random random) {
+        switch (kind) {
+        case WORDS: {
+            final var word = new StringBuilder();
+            final int length = 1 + random.nextInt(4) + random.nextInt(3);
+            for (int i = 0; i < length; i++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            return word.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        case URLS: {
+            final var url = new StringBuilder("https://www.example");
+            url.append(random.nextInt(50)).append(random.nextBoolean() ? ".com" : ".org");
+            final int depth = 1 + random.nextInt(4);
+            for (int i = 0; i < depth; i++) {
+                url.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+            }
+            url.append('/').append(random.nextInt(10000));
+            return url.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        case BINARY: {
+            final byte[] key = new byte[4 + random.nextInt(13)];
+            random.nextBytes(key);
+            return key;
+        }
+        default:
+            throw new AssertionError(kind);
+        }
+    }
+}
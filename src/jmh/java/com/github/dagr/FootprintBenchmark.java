@@ -0,0 +1,104 @@
+package com.github.dagr;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Retained heap per key of each representation, reported as auxiliary
+ * counters. A measurement takes far longer than the iteration time, so each
+ * iteration runs it exactly once; the time itself is meaningless.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-XX:+UseSerialGC" })
+public class FootprintBenchmark {
+    static final int SIZE = 100_000;
+
+    @Param({ "WORDS", "URLS", "BINARY" })
+    Datasets.Kind kind;
+
+    byte[][] keys;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double fstBytesPerKey;
+        public double doubleArrayBytesPerKey;
+        public double longFSTBytesPerKey;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            fstBytesPerKey = 0;
+            doubleArrayBytesPerKey = 0;
+            longFSTBytesPerKey = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        keys = Datasets.sortedKeys(kind, SIZE);
+    }
+
+    FST<Integer> buildFST() {
+        return new IntegerFSTBuilder().build(IntStream.range(0, SIZE).mapToObj(i -> Map.entry(keys[i], i)));
+    }
+
+    LongFST buildLongFST() {
+        final var builder = new LongFSTBuilder();
+        for (int i = 0; i < SIZE; i++) {
+            builder.add(keys[i], i);
+        }
+        return builder.finish();
+    }
+
+    @Benchmark
+    public Object measure(Footprint footprint) {
+        final Object fst = retain(this::buildFST);
+        footprint.fstBytesPerKey = retained / (double) SIZE;
+
+        final Object doubleArray = retain(() -> new DoubleArrayCompiler<Integer>().compile(buildFST()));
+        footprint.doubleArrayBytesPerKey = retained / (double) SIZE;
+
+        final Object longFST = retain(this::buildLongFST);
+        footprint.longFSTBytesPerKey = retained / (double) SIZE;
+
+        return new Object[] { fst, doubleArray, longFST };
+    }
+
+    private long retained;
+
+    // builds an object and measures the heap it retains after collection
+    private Object retain(Supplier<Object> supplier) {
+        final long before = usedHeap();
+        final Object object = supplier.get();
+        retained = usedHeap() - before;
+        return object;
+    }
+
+    private static long usedHeap() {
+        final var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.dagr;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Latency of a single lookup or prefix search of a key in random order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LookupBenchmark {
+    static final int SIZE = 100_000;
+
+    @Param({ "WORDS", "URLS", "BINARY" })
+    Datasets.Kind kind;
+
+    byte[][] queries;
+    int next;
+
+    FST<Integer> fst;
+    DoubleArrayFST<Integer> doubleArray;
+    LongFST longFST;
+
+    @Setup
+    public void setup() {
+        final byte[][] keys = Datasets.sortedKeys(kind, SIZE);
+        fst = new IntegerFSTBuilder().build(IntStream.range(0, SIZE).mapToObj(i -> Map.entry(keys[i], i)));
+        doubleArray = new DoubleArrayCompiler<Integer>().compile(fst);
+        final var builder = new LongFSTBuilder();
+        for (int i = 0; i < SIZE; i++) {
+            builder.add(keys[i], i);
+        }
+        longFST = builder.finish();
+        queries = Datasets.shuffled(keys);
+    }
+
+    private byte[] nextQuery() {
+        final byte[] query = queries[next];
+        next = next + 1 == queries.length ? 0 : next + 1;
+        return query;
+    }
+
+    @Benchmark
+    public Object getFST() {
+        return fst.get(nextQuery());
+    }
+
+    @Benchmark
+    public Object getDoubleArray() {
+        return doubleArray.get(nextQuery());
+    }
+
+    @Benchmark
+    public long getLongFST() {
+        return longFST.getOrDefault(nextQuery(), -1);
+    }
+
+    @Benchmark
+    public void commonPrefixSearchFST(Blackhole blackhole) {
+        final byte[] query = nextQuery();
+        fst.commonPrefixSearch(query, 0, query.length, (length, output) -> blackhole.consume(output));
+    }
+
+    @Benchmark
+    public void commonPrefixSearchDoubleArray(Blackhole blackhole) {
+        final byte[] query = nextQuery();
+        doubleArray.commonPrefixSearch(query, 0, query.length, (length, output) -> blackhole.consume(output));
+    }
+
+    @Benchmark
+    public void commonPrefixSearchLongFST(Blackhole blackhole) {
+        final byte[] query = nextQuery();
+        longFST.commonPrefixSearch(query, 0, query.length, (length, output) -> blackhole.consume(output));
+    }
+}
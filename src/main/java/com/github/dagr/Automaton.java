@@ -0,0 +1,524 @@
+package com.github.dagr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic automaton over bytes which matches whole keys, compiled from
+ * a glob or a regular expression. Patterns are matched against UTF-8 encoded
+ * keys, and a wildcard matches one UTF-8 character.
+ *
+ * States are numbered from 0, and -1 is the dead state. States from which no
+ * key can be accepted are removed, so a traversal can stop as soon as it
+ * reaches the dead state. See {@link FST#intersect(Automaton, MatchConsumer)}.
+ */
+public class Automaton {
+    static final int DEAD = -1;
+
+    // next states of state s are table[s * 256, s * 256 + 256)
+    private final int[] table;
+    private final boolean[] accepting;
+    private final int initialState;
+
+    private Automaton(int[] table, boolean[] accepting, int initialState) {
+        this.table = table;
+        this.accepting = accepting;
+        this.initialState = initialState;
+    }
+
+    /**
+     * Compiles a glob, in which {@code *} matches any characters, {@code ?}
+     * matches one character, {@code [...]} matches one character of a class
+     * (negated by a leading {@code !} or {@code ^}) and {@code \} escapes the
+     * next character.
+     *
+     * @throws IllegalArgumentException if {@code pattern} is malformed
+     */
+    public static Automaton glob(String pattern) {
+        final var parser = new Parser(pattern);
+        return determinize(parser.nfa, parser.parseGlob());
+    }
+
+    /**
+     * Compiles a regular expression of literals, {@code .}, classes
+     * {@code [...]} (negated by a leading {@code ^}), groups {@code (...)},
+     * alternation {@code |}, the repetitions {@code *}, {@code +} and
+     * {@code ?}, and {@code \} escaping the next character.
+     *
+     * @throws IllegalArgumentException if {@code pattern} is malformed
+     */
+    public static Automaton regex(String pattern) {
+        final var parser = new Parser(pattern);
+        return determinize(parser.nfa, parser.parseRegex());
+    }
+
+    /**
+     * Returns the initial state, or -1 if no key matches.
+     */
+    public int initialState() {
+        return initialState;
+    }
+
+    /**
+     * Returns the state after reading {@code label} from {@code state}, or -1
+     * if no key with the bytes read so far matches.
+     */
+    public int step(int state, byte label) {
+        assert state != DEAD;
+        return table[(state << 8) | (label & 0xFF)];
+    }
+
+    public boolean isAccepting(int state) {
+        return state != DEAD && accepting[state];
+    }
+
+    public int numStates() {
+        return accepting.length;
+    }
+
+    /**
+     * Returns true if {@code key} matches.
+     */
+    public boolean matches(byte[] key) {
+        int state = initialState;
+        for (int i = 0; i < key.length && state != DEAD; i++) {
+            state = step(state, key[i]);
+        }
+        return isAccepting(state);
+    }
+
+    /**
+     * Converts the NFA to a DFA by subset construction, then removes the
+     * states which cannot reach an accepting state.
+     */
+    private static Automaton determinize(Nfa nfa, Fragment fragment) {
+        final List<BitSet> sets = new ArrayList<>();
+        final Map<BitSet, Integer> ids = new HashMap<>();
+        final BitSet start = new BitSet();
+        start.set(fragment.start);
+        nfa.close(start);
+        sets.add(start);
+        ids.put(start, 0);
+
+        int[] table = new int[256];
+        for (int s = 0; s < sets.size(); s++) {
+            final BitSet set = sets.get(s);
+            if (table.length < (s + 1) * 256) {
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+            for (int label = 0; label < 256; label++) {
+                final BitSet next = nfa.step(set, label);
+                if (next.isEmpty()) {
+                    table[(s << 8) | label] = DEAD;
+                    continue;
+                }
+                Integer id = ids.get(next);
+                if (id == null) {
+                    id = sets.size();
+                    sets.add(next);
+                    ids.put(next, id);
+                }
+                table[(s << 8) | label] = id;
+            }
+        }
+
+        final int numStates = sets.size();
+        final boolean[] accepting = new boolean[numStates];
+        for (int s = 0; s < numStates; s++) {
+            accepting[s] = sets.get(s).get(fragment.end);
+        }
+
+        // find live states backward from the accepting states
+        final boolean[] isLive = accepting.clone();
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int s = 0; s < numStates; s++) {
+                if (isLive[s]) {
+                    continue;
+                }
+                for (int label = 0; label < 256; label++) {
+                    final int next = table[(s << 8) | label];
+                    if (next != DEAD && isLive[next]) {
+                        isLive[s] = true;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        // renumber the live states
+        final int[] renumbered = new int[numStates];
+        int numLive = 0;
+        for (int s = 0; s < numStates; s++) {
+            renumbered[s] = isLive[s] ? numLive++ : DEAD;
+        }
+        final int[] liveTable = new int[numLive * 256];
+        final boolean[] liveAccepting = new boolean[numLive];
+        for (int s = 0; s < numStates; s++) {
+            if (!isLive[s]) {
+                continue;
+            }
+            for (int label = 0; label < 256; label++) {
+                final int next = table[(s << 8) | label];
+                liveTable[(renumbered[s] << 8) | label] = next == DEAD ? DEAD : renumbered[next];
+            }
+            liveAccepting[renumbered[s]] = accepting[s];
+        }
+        return new Automaton(liveTable, liveAccepting, renumbered[0]);
+    }
+
+    /**
+     * Part of an NFA with one entry and one exit state.
+     */
+    private static class Fragment {
+        final int start;
+        final int end;
+
+        Fragment(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Thompson NFA with byte range and epsilon transitions.
+     */
+    private static class Nfa {
+        // {low, high, next state} of each state
+        final List<List<int[]>> ranges = new ArrayList<>();
+        final List<List<Integer>> epsilons = new ArrayList<>();
+
+        int newState() {
+            ranges.add(new ArrayList<>());
+            epsilons.add(new ArrayList<>());
+            return ranges.size() - 1;
+        }
+
+        void range(int from, int low, int high, int to) {
+            ranges.get(from).add(new int[] { low, high, to });
+        }
+
+        void epsilon(int from, int to) {
+            epsilons.get(from).add(to);
+        }
+
+        void close(BitSet set) {
+            final Deque<Integer> stack = new ArrayDeque<>();
+            set.stream().forEach(stack::push);
+            while (!stack.isEmpty()) {
+                for (int next : epsilons.get(stack.pop())) {
+                    if (!set.get(next)) {
+                        set.set(next);
+                        stack.push(next);
+                    }
+                }
+            }
+        }
+
+        BitSet step(BitSet set, int label) {
+            final BitSet next = new BitSet();
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                for (int[] range : ranges.get(s)) {
+                    if (range[0] <= label && label <= range[1]) {
+                        next.set(range[2]);
+                    }
+                }
+            }
+            close(next);
+            return next;
+        }
+
+        Fragment empty() {
+            final int state = newState();
+            return new Fragment(state, state);
+        }
+
+        Fragment range(int low, int high) {
+            final int start = newState();
+            final int end = newState();
+            range(start, low, high, end);
+            return new Fragment(start, end);
+        }
+
+        Fragment concat(Fragment first, Fragment second) {
+            epsilon(first.end, second.start);
+            return new Fragment(first.start, second.end);
+        }
+
+        Fragment alternate(Fragment first, Fragment second) {
+            final int start = newState();
+            final int end = newState();
+            epsilon(start, first.start);
+            epsilon(start, second.start);
+            epsilon(first.end, end);
+            epsilon(second.end, end);
+            return new Fragment(start, end);
+        }
+
+        Fragment star(Fragment fragment) {
+            final int start = newState();
+            final int end = newState();
+            epsilon(start, fragment.start);
+            epsilon(start, end);
+            epsilon(fragment.end, fragment.start);
+            epsilon(fragment.end, end);
+            return new Fragment(start, end);
+        }
+
+        Fragment plus(Fragment fragment) {
+            final int end = newState();
+            epsilon(fragment.end, fragment.start);
+            epsilon(fragment.end, end);
+            return new Fragment(fragment.start, end);
+        }
+
+        Fragment optional(Fragment fragment) {
+            final int start = newState();
+            final int end = newState();
+            epsilon(start, fragment.start);
+            epsilon(start, end);
+            epsilon(fragment.end, end);
+            return new Fragment(start, end);
+        }
+
+        /**
+         * Returns a fragment matching the UTF-8 encoding of {@code codePoint}.
+         */
+        Fragment codePoint(int codePoint) {
+            final byte[] bytes = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+            Fragment fragment = range(bytes[0] & 0xFF, bytes[0] & 0xFF);
+            for (int i = 1; i < bytes.length; i++) {
+                fragment = concat(fragment, range(bytes[i] & 0xFF, bytes[i] & 0xFF));
+            }
+            return fragment;
+        }
+
+        /**
+         * Returns a fragment matching one UTF-8 encoded character of more than
+         * one byte.
+         */
+        Fragment multibyte() {
+            final int start = newState();
+            final int end = newState();
+            int from = start;
+            // lead bytes of 2, 3 and 4 byte sequences
+            final int[][] leads = { { 0xC2, 0xDF }, { 0xE0, 0xEF }, { 0xF0, 0xF4 } };
+            for (int n = 0; n < leads.length; n++) {
+                int state = newState();
+                range(from, leads[n][0], leads[n][1], state);
+                for (int i = 0; i < n; i++) {
+                    final int next = newState();
+                    range(state, 0x80, 0xBF, next);
+                    state = next;
+                }
+                range(state, 0x80, 0xBF, end);
+            }
+            return new Fragment(start, end);
+        }
+
+        /**
+         * Returns a fragment matching any one UTF-8 encoded character.
+         */
+        Fragment any() {
+            final Fragment multibyte = multibyte();
+            range(multibyte.start, 0x00, 0x7F, multibyte.end);
+            return multibyte;
+        }
+    }
+
+    private static class Parser {
+        final Nfa nfa = new Nfa();
+        private final String pattern;
+        private int pos;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        private boolean hasNext() {
+            return pos < pattern.length();
+        }
+
+        private int peek() {
+            return pattern.codePointAt(pos);
+        }
+
+        private int next() {
+            final int c = pattern.codePointAt(pos);
+            pos += Character.charCount(c);
+            return c;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + pos + " in " + pattern);
+        }
+
+        private int escaped() {
+            if (!hasNext()) {
+                throw error("Dangling escape");
+            }
+            return next();
+        }
+
+        Fragment parseGlob() {
+            Fragment fragment = nfa.empty();
+            while (hasNext()) {
+                final int c = next();
+                final Fragment atom;
+                if (c == '*') {
+                    atom = nfa.star(nfa.any());
+                } else if (c == '?') {
+                    atom = nfa.any();
+                } else if (c == '[') {
+                    atom = parseClass('!');
+                } else if (c == '\\') {
+                    atom = nfa.codePoint(escaped());
+                } else {
+                    atom = nfa.codePoint(c);
+                }
+                fragment = nfa.concat(fragment, atom);
+            }
+            return fragment;
+        }
+
+        Fragment parseRegex() {
+            final Fragment fragment = parseAlternation();
+            if (hasNext()) {
+                throw error("Unmatched )");
+            }
+            return fragment;
+        }
+
+        private Fragment parseAlternation() {
+            Fragment fragment = parseConcatenation();
+            while (hasNext() && peek() == '|') {
+                next();
+                fragment = nfa.alternate(fragment, parseConcatenation());
+            }
+            return fragment;
+        }
+
+        private Fragment parseConcatenation() {
+            Fragment fragment = nfa.empty();
+            while (hasNext() && peek() != '|' && peek() != ')') {
+                fragment = nfa.concat(fragment, parseRepetition());
+            }
+            return fragment;
+        }
+
+        private Fragment parseRepetition() {
+            Fragment fragment = parseAtom();
+            while (hasNext()) {
+                final int c = peek();
+                if (c == '*') {
+                    fragment = nfa.star(fragment);
+                } else if (c == '+') {
+                    fragment = nfa.plus(fragment);
+                } else if (c == '?') {
+                    fragment = nfa.optional(fragment);
+                } else {
+                    break;
+                }
+                next();
+            }
+            return fragment;
+        }
+
+        private Fragment parseAtom() {
+            final int c = next();
+            switch (c) {
+            case '(':
+                final Fragment fragment = parseAlternation();
+                if (!hasNext() || next() != ')') {
+                    throw error("Unmatched (");
+                }
+                return fragment;
+            case '[':
+                return parseClass('^');
+            case '.':
+                return nfa.any();
+            case '\\':
+                return nfa.codePoint(escaped());
+            case '*':
+            case '+':
+            case '?':
+                throw error("Nothing to repeat");
+            default:
+                return nfa.codePoint(c);
+            }
+        }
+
+        /**
+         * Parses a character class after {@code [}. Ranges must be of ASCII
+         * characters, and a negated class may contain only ASCII characters.
+         */
+        private Fragment parseClass(int negation) {
+            final boolean isNegated = hasNext() && peek() == negation;
+            if (isNegated) {
+                next();
+            }
+            final BitSet ascii = new BitSet(128);
+            final List<Integer> others = new ArrayList<>();
+            boolean isFirst = true;
+            while (true) {
+                if (!hasNext()) {
+                    throw error("Unmatched [");
+                }
+                int c = next();
+                if (c == ']' && !isFirst) {
+                    break;
+                }
+                isFirst = false;
+                if (c == '\\') {
+                    c = escaped();
+                }
+                if (hasNext() && peek() == '-' && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                    next();
+                    int high = next();
+                    if (high == '\\') {
+                        high = escaped();
+                    }
+                    if (c >= 0x80 || high >= 0x80) {
+                        throw error("Ranges of non-ASCII characters are not supported");
+                    }
+                    if (c > high) {
+                        throw error("Invalid range");
+                    }
+                    ascii.set(c, high + 1);
+                } else if (c < 0x80) {
+                    ascii.set(c);
+                } else {
+                    others.add(c);
+                }
+            }
+            if (isNegated) {
+                if (!others.isEmpty()) {
+                    throw error("Negated classes of non-ASCII characters are not supported");
+                }
+                final Fragment fragment = nfa.multibyte();
+                for (int c = ascii.nextClearBit(0); c < 0x80; c = ascii.nextClearBit(c + 1)) {
+                    nfa.range(fragment.start, c, c, fragment.end);
+                }
+                return fragment;
+            }
+            final int start = nfa.newState();
+            final int end = nfa.newState();
+            for (int c = ascii.nextSetBit(0); c >= 0; c = ascii.nextSetBit(c + 1)) {
+                nfa.range(start, c, c, end);
+            }
+            for (int c : others) {
+                final Fragment fragment = nfa.codePoint(c);
+                nfa.epsilon(start, fragment.start);
+                nfa.epsilon(fragment.end, end);
+            }
+            return new Fragment(start, end);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.dagr;
+
+/**
+ * Receives the statistics of builds, for example to export them to a metrics
+ * system. All methods do nothing by default.
+ *
+ * @see FSTBuilder#setBuildListener(BuildListener)
+ */
+public interface BuildListener {
+    /** Listener which ignores everything, used by default. */
+    BuildListener NO_OP = new BuildListener() {
+    };
+
+    /** Number of keys between calls of {@link #onProgress(BuildStats)}. */
+    int PROGRESS_INTERVAL = 1 << 16;
+
+    /**
+     * Called with the statistics so far every {@link #PROGRESS_INTERVAL} keys
+     * of a sequential build.
+     */
+    default void onProgress(BuildStats stats) {
+    }
+
+    /**
+     * Called with the statistics of a finished build.
+     */
+    default void onBuildFinished(BuildStats stats) {
+    }
+}
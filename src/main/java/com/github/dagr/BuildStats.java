@@ -0,0 +1,150 @@
+package com.github.dagr;
+
+/**
+ * Statistics of a build.
+ *
+ * Registry hits are states found equivalent to a frozen state, and misses are
+ * states frozen anew. A parallel build counts the registry lookups of its
+ * shards as well, while the numbers of states, transitions and output bytes
+ * are those of the built FST.
+ *
+ * Phase times split the build into registering states, which interns their
+ * outputs and looks them up or freezes them, and pushing outputs toward the
+ * initial state; the rest of the elapsed time is spent inserting keys. Reading
+ * the clock around every state would slow builds down, so phase times are
+ * measured only when a {@link BuildListener} is set. A parallel build sums the
+ * phase times of its shards, which may thus exceed the elapsed time.
+ */
+public class BuildStats {
+    long numKeys;
+    long registryHits;
+    long registryMisses;
+    long numStates;
+    long numTransitions;
+    long outputBytes;
+    int peakSpineLength;
+    long registryNanos;
+    long outputNanos;
+    // whether phase times are measured
+    final boolean isTimed;
+    private final long startNanos;
+    private long elapsedNanos;
+
+    BuildStats(boolean isTimed) {
+        this.isTimed = isTimed;
+        this.startNanos = System.nanoTime();
+    }
+
+    private BuildStats(BuildStats stats) {
+        this.numKeys = stats.numKeys;
+        this.registryHits = stats.registryHits;
+        this.registryMisses = stats.registryMisses;
+        this.numStates = stats.numStates;
+        this.numTransitions = stats.numTransitions;
+        this.outputBytes = stats.outputBytes;
+        this.peakSpineLength = stats.peakSpineLength;
+        this.registryNanos = stats.registryNanos;
+        this.outputNanos = stats.outputNanos;
+        this.isTimed = stats.isTimed;
+        this.startNanos = stats.startNanos;
+        this.elapsedNanos = System.nanoTime() - stats.startNanos;
+    }
+
+    /**
+     * Returns a copy of the statistics so far.
+     */
+    BuildStats snapshot() {
+        return new BuildStats(this);
+    }
+
+    BuildStats finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+        return this;
+    }
+
+    void addShard(BuildStats shard) {
+        numKeys += shard.numKeys;
+        registryHits += shard.registryHits;
+        registryMisses += shard.registryMisses;
+        peakSpineLength = Math.max(peakSpineLength, shard.peakSpineLength);
+        registryNanos += shard.registryNanos;
+        outputNanos += shard.outputNanos;
+    }
+
+    public long numKeys() {
+        return numKeys;
+    }
+
+    public long registryHits() {
+        return registryHits;
+    }
+
+    public long registryMisses() {
+        return registryMisses;
+    }
+
+    /**
+     * Returns the ratio of registry lookups which found an equivalent state.
+     */
+    public double registryHitRate() {
+        final long lookups = registryHits + registryMisses;
+        return lookups == 0 ? 0 : (double) registryHits / lookups;
+    }
+
+    public long numStates() {
+        return numStates;
+    }
+
+    public long numTransitions() {
+        return numTransitions;
+    }
+
+    /**
+     * Returns the size of the outputs of the frozen states, as serialized by
+     * the output algebra.
+     */
+    public long outputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * Returns the largest number of unfrozen states along a key, which is the
+     * longest key length plus one.
+     */
+    public int peakSpineLength() {
+        return peakSpineLength;
+    }
+
+    /**
+     * Returns the time spent registering states, or 0 if phase times are not
+     * measured.
+     */
+    public long registryNanos() {
+        return registryNanos;
+    }
+
+    /**
+     * Returns the time spent pushing outputs toward the initial state, or 0 if
+     * phase times are not measured.
+     */
+    public long outputNanos() {
+        return outputNanos;
+    }
+
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double keysPerSecond() {
+        return elapsedNanos == 0 ? 0 : numKeys * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return numKeys + " keys, " + numStates + " states, " + numTransitions + " transitions, " + outputBytes
+                + " output bytes, registry hit rate " + String.format("%.3f", registryHitRate())
+                + ", peak spine length " + peakSpineLength + ", " + String.format("%.0f", keysPerSecond())
+                + " keys/s" + (isTimed ? ", " + registryNanos / 1000000 + " ms registering states, "
+                        + outputNanos / 1000000 + " ms pushing outputs" : "");
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.dagr;
+
+import java.util.Arrays;
+
+/**
+ * Interns byte array outputs while building, so that equal outputs are
+ * stored once and states with equal outputs are merged.
+ *
+ * Byte arrays compare by identity, so without interning two states whose
+ * outputs have the same content would never be found equal. The pool keeps
+ * one array per distinct content in an open addressing table.
+ *
+ * Frozen transitions hold references to the pooled arrays, not offsets into
+ * a packed pool, so interning removes duplicate arrays but each transition
+ * still keeps its output wrapper. Outputs are packed with length prefixes and
+ * referenced by int offsets only when a double array is saved.
+ */
+class ByteOutputPool {
+    private static final int INITIAL_TABLE_SIZE = 64;
+    private static final byte[] EMPTY = new byte[0];
+
+    private byte[][] table = new byte[INITIAL_TABLE_SIZE][];
+    private int[] hashes = new int[INITIAL_TABLE_SIZE];
+    private int size;
+
+    /**
+     * Returns the pooled instance with the same content as {@code bytes},
+     * adding {@code bytes} if there is none.
+     */
+    byte[] intern(byte[] bytes) {
+        if (bytes.length == 0) {
+            return EMPTY;
+        }
+        final int hash = Arrays.hashCode(bytes);
+        final int mask = table.length - 1;
+        int bucket = mix(hash) & mask;
+        while (table[bucket] != null) {
+            if (hashes[bucket] == hash && Arrays.equals(table[bucket], bytes)) {
+                return table[bucket];
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        table[bucket] = bytes;
+        hashes[bucket] = hash;
+        size++;
+        // keep the load factor at most 1/2
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return bytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        final byte[][] oldTable = table;
+        final int[] oldHashes = hashes;
+        table = new byte[oldTable.length * 2][];
+        hashes = new int[oldTable.length * 2];
+        final int mask = table.length - 1;
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] == null) {
+                continue;
+            }
+            int bucket = mix(oldHashes[i]) & mask;
+            while (table[bucket] != null) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = oldTable[i];
+            hashes[bucket] = oldHashes[i];
+        }
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.dagr;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Byte sequence outputs, shared by their longest common prefix and
+ * concatenated along a path. The empty sequence is no output, and outputs are
+ * serialized as a varint length followed by the bytes.
+ */
+public class ByteSequenceOutputs implements Outputs<byte[]> {
+    private static final byte[] NO_OUTPUT = new byte[0];
+
+    @Override
+    public byte[] noOutput() {
+        return NO_OUTPUT;
+    }
+
+    @Override
+    public boolean isNoOutput(byte[] output) {
+        return output.length == 0;
+    }
+
+    @Override
+    public byte[] prefix(byte[] a, byte[] b) {
+        final int length = Arrays.mismatch(a, b);
+        if (length < 0) {
+            return a;
+        }
+        return length == 0 ? NO_OUTPUT : Arrays.copyOf(a, length);
+    }
+
+    @Override
+    public byte[] concat(byte[] prefix, byte[] suffix) {
+        if (suffix.length == 0) {
+            return prefix;
+        }
+        if (prefix.length == 0) {
+            return suffix;
+        }
+        final byte[] output = Arrays.copyOf(prefix, prefix.length + suffix.length);
+        System.arraycopy(suffix, 0, output, prefix.length, suffix.length);
+        return output;
+    }
+
+    @Override
+    public byte[] subtract(byte[] output, byte[] prefix) {
+        assert Arrays.equals(output, 0, prefix.length, prefix, 0, prefix.length);
+        if (prefix.length == 0) {
+            return output;
+        }
+        return prefix.length == output.length ? NO_OUTPUT : Arrays.copyOfRange(output, prefix.length, output.length);
+    }
+
+    /**
+     * Returns an interner by content, as arrays compare by identity.
+     */
+    @Override
+    public UnaryOperator<byte[]> newInterner() {
+        return new ByteOutputPool()::intern;
+    }
+
+    @Override
+    public int outputSize(byte[] output) {
+        return Varints.size(output.length) + output.length;
+    }
+
+    @Override
+    public void write(byte[] output, ByteBuffer out) {
+        Varints.put(out, output.length);
+        out.put(output);
+    }
+
+    @Override
+    public byte[] read(ByteBuffer in, int offset) {
+        final int length = (int) Varints.get(in, offset);
+        final byte[] output = new byte[length];
+        offset += Varints.size(length);
+        for (int i = 0; i < length; i++) {
+            output[i] = in.get(offset + i);
+        }
+        return output;
+    }
+}
@@ -3,104 +3,17 @@ package com.github.dagr;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.nio.file.Path;
 import java.util.Map;
-import java.util.Optional;
 
-public class BytesFSTBuilder extends FSTBuilder<byte[]> {
-    @Override
-    byte[] defaultValue() {
-        return new byte[0];
-    }
-
-    @Override
-    Optional<byte[]> prefix(Optional<byte[]> a, Optional<byte[]> b) {
-        if (a.isEmpty() || b.isEmpty()) {
-            return Optional.empty();
-        }
-
-        final byte[] a_ = a.get();
-        final byte[] b_ = b.get();
-
-        if (a_.length == 0 || b_.length == 0) {
-            return Optional.empty();
-        }
-
-        final byte[] shorter = a_.length <= b_.length ? a_ : b_;
-        int end = 0;
-        while (end < shorter.length) {
-            if (a_[end] != b_[end]) {
-                break;
-            }
-            end++;
-        }
-        if (end == 0) {
-            return Optional.empty();
-        }
-        return Optional.of(Arrays.copyOf(shorter, end));
-    }
-
-    @Override
-    Optional<byte[]> concat(Optional<byte[]> a, Optional<byte[]> b) {
-        if (a.isEmpty()) {
-            if (b.isPresent() && b.get().length == 0) {
-                return Optional.empty();
-            }
-            return b;
-        }
-        if (b.isEmpty()) {
-            if (a.get().length == 0) {
-                return Optional.empty();
-            }
-            return a;
-        }
-
-        final byte[] a_ = a.get();
-        final byte[] b_ = b.get();
-
-        if (a_.length == 0 && b_.length == 0) {
-            return Optional.empty();
-        }
-
-        final byte[] c_ = new byte[a_.length + b_.length];
-        System.arraycopy(a_, 0, c_, 0, a_.length);
-        System.arraycopy(b_, 0, c_, a_.length, b_.length);
-        return Optional.of(c_);
-    }
-
-    @Override
-    Optional<byte[]> subtract(Optional<byte[]> a, Optional<byte[]> b) {
-        if (a.isEmpty()) {
-            return Optional.empty();
-        }
-        if (b.isEmpty()) {
-            if (a.get().length == 0) {
-                return Optional.empty();
-            }
-            return a;
-        }
-
-        final byte[] a_ = a.get();
-        final byte[] b_ = b.get();
-
-        if (a_.length == 0) {
-            return Optional.empty();
-        }
-        if (b_.length == 0) {
-            return a;
-        }
-
-        int start = 0;
-        while (start < a_.length && start < b_.length) {
-            if (a_[start] != b_[start]) {
-                break;
-            }
-            start++;
-        }
-        if (start == a_.length) {
-            return Optional.empty();
-        }
-        return Optional.of(Arrays.copyOfRange(a_, start, a_.length));
+/**
+ * Builds FSTs of byte sequence outputs, which are shared by their longest
+ * common prefixes. The algebra and the encoding are those of
+ * {@link ByteSequenceOutputs}.
+ */
+public class BytesFSTBuilder extends OutputsFSTBuilder<byte[]> {
+    public BytesFSTBuilder() {
+        super(new ByteSequenceOutputs());
     }
 
     public static void main(String[] args) throws Exception {
@@ -113,6 +26,12 @@ public class BytesFSTBuilder extends FSTBuilder<byte[]> {
 
         final var builder = new BytesFSTBuilder();
         final var fst = builder.build(entries);
-        System.out.println(fst.toDot());
+        if (args.length > 0) {
+            // compile and save to the given path instead of printing the graph
+            new DoubleArrayCompiler<byte[]>().compile(fst).save(Path.of(args[0]));
+        } else {
+            fst.writeDot(System.out);
+            System.out.println();
+        }
     }
 }
@@ -0,0 +1,72 @@
+package com.github.dagr;
+
+import java.util.Optional;
+
+/**
+ * Reads a key byte by byte, so that a caller can look up keys incrementally,
+ * for example while scanning a text. A cursor holds only the current state
+ * and the output summed up to it. Cursors are not thread-safe, but they are
+ * cheap, so each thread should use its own cursor on a shared FST.
+ */
+public class Cursor<T> {
+    private final FST<T> fst;
+    private State<T> state;
+    private Optional<T> output;
+    private int depth;
+
+    Cursor(FST<T> fst) {
+        this.fst = fst;
+        reset();
+    }
+
+    /**
+     * Moves the cursor back to the initial state.
+     */
+    public void reset() {
+        state = fst.initialState;
+        output = Optional.empty();
+        depth = 0;
+    }
+
+    /**
+     * Reads {@code label}. Returns false and leaves the cursor unchanged if
+     * no key continues with {@code label}.
+     */
+    public boolean next(byte label) {
+        final int t = state.find(label);
+        if (t < 0) {
+            return false;
+        }
+        final Optional<T> transitionOutput = state.transitionOutput(t);
+        if (transitionOutput.isPresent()) {
+            output = fst.algebra.concat(output, transitionOutput);
+        }
+        state = state.nextState(t);
+        depth++;
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes read since the last reset.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Returns true if the bytes read so far are an accepted key.
+     */
+    public boolean isFinal() {
+        return state.isFinal;
+    }
+
+    /**
+     * Returns the output of the bytes read so far, which must be an accepted
+     * key.
+     */
+    public T output() {
+        assert state.isFinal;
+        final Optional<T> matched = state.output.isPresent() ? fst.algebra.concat(output, state.output) : output;
+        return matched.isPresent() ? matched.get() : fst.defaultOutput.get();
+    }
+}
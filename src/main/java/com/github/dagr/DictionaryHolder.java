@@ -0,0 +1,118 @@
+package com.github.dagr;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Holds the current dictionary of a service and replaces it without locking.
+ *
+ * Readers acquire a lease on the current dictionary and close it when they
+ * are done. {@link #swap(Object)} publishes a new dictionary atomically;
+ * readers holding a lease on the old one keep using it, and the old one is
+ * released once the last of them closes its lease. Each reader gets its own
+ * lease on a reference counted dictionary, so acquiring and closing one costs
+ * a few atomic operations, and closing a lease again has no effect.
+ *
+ * <pre>
+ * try (var lease = holder.acquire()) {
+ *     lease.get().get(key);
+ * }
+ * </pre>
+ */
+public class DictionaryHolder<D> {
+    private final AtomicReference<Leased> current;
+    private final Consumer<? super D> onRelease;
+
+    /**
+     * Creates a holder of {@code dictionary}. {@code onRelease} is called with
+     * every dictionary that has been replaced and is no longer leased, for
+     * example to unmap or close it.
+     */
+    public DictionaryHolder(D dictionary, Consumer<? super D> onRelease) {
+        this.onRelease = onRelease;
+        this.current = new AtomicReference<>(new Leased(dictionary));
+    }
+
+    public DictionaryHolder(D dictionary) {
+        this(dictionary, d -> {
+        });
+    }
+
+    /**
+     * Returns a lease on the current dictionary, which must be closed.
+     */
+    public Lease acquire() {
+        while (true) {
+            final Leased leased = current.get();
+            if (leased.retain()) {
+                return new Lease(leased);
+            }
+            // the dictionary was swapped out and released, so read the new one
+        }
+    }
+
+    /**
+     * Replaces the current dictionary with {@code dictionary}. The old one is
+     * released as soon as no reader holds a lease on it.
+     */
+    public void swap(D dictionary) {
+        current.getAndSet(new Leased(dictionary)).release();
+    }
+
+    /**
+     * Lease on a dictionary, which keeps it from being released until closed.
+     */
+    public class Lease implements AutoCloseable {
+        private final Leased leased;
+        private final AtomicBoolean isClosed = new AtomicBoolean();
+
+        private Lease(Leased leased) {
+            this.leased = leased;
+        }
+
+        public D get() {
+            return leased.dictionary;
+        }
+
+        @Override
+        public void close() {
+            // release once even if closed twice, which would free the dictionary under other readers
+            if (isClosed.compareAndSet(false, true)) {
+                leased.release();
+            }
+        }
+    }
+
+    /**
+     * Dictionary with the number of its open leases.
+     */
+    private class Leased {
+        private final D dictionary;
+        // open leases, plus one while the dictionary is current
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Leased(D dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        private boolean retain() {
+            while (true) {
+                final int n = references.get();
+                if (n == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                onRelease.accept(dictionary);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.dagr;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Compiles the minimized object graph of an {@link FST} into a
+ * {@link DoubleArrayFST}.
+ */
+public class DoubleArrayCompiler<T> {
+    private static final int EMPTY = DoubleArrayFST.EMPTY;
+    // enough room for the final slot and all 256 labels
+    private static final int BLOCK_SIZE = 257;
+    // failed placements after which an empty slot is no longer tried as the
+    // first slot of a node, which keeps the search linear in the array size
+    private static final int MAX_FAILURES = 16;
+
+    private int[] base;
+    private int[] check;
+    private Object[] outputs;
+    // doubly linked list of empty slots, so that placing a node skips occupied slots
+    // and saturated ones
+    private int[] nextEmpty;
+    private int[] prevEmpty;
+    private int firstEmpty;
+    private int lastEmpty;
+    private byte[] failures;
+    private int capacity;
+    private int maxSlot;
+    private BitSet usedBases;
+
+    public DoubleArrayFST<T> compile(FST<T> fst) {
+        init();
+
+        // place nodes in breadth first order so that neighboring nodes share cache lines.
+        // states are keyed by identity; State.hashCode walks the whole subgraph.
+        final Map<State<T>, Integer> bases = new IdentityHashMap<>();
+        final Deque<State<T>> queue = new ArrayDeque<>();
+        bases.put(fst.initialState, place(fst.initialState));
+        queue.add(fst.initialState);
+        while (!queue.isEmpty()) {
+            final State<T> state = queue.poll();
+            for (int i = 0; i < state.numTransitions(); i++) {
+                final State<T> nextState = state.nextState(i);
+                if (!bases.containsKey(nextState)) {
+                    bases.put(nextState, place(nextState));
+                    queue.add(nextState);
+                }
+            }
+        }
+
+        // link transitions to the bases of their next states
+        for (Map.Entry<State<T>, Integer> entry : bases.entrySet()) {
+            final State<T> state = entry.getKey();
+            final int node = entry.getValue();
+            for (int i = 0; i < state.numTransitions(); i++) {
+                base[node + DoubleArrayFST.code(state.label(i))] = bases.get(state.nextState(i));
+            }
+        }
+
+        final int size = maxSlot + 1;
+        final var result = new DoubleArrayFST<T>(Arrays.copyOf(base, size), Arrays.copyOf(check, size),
+                Arrays.copyOf(outputs, size), bases.get(fst.initialState), fst.algebra);
+        init();
+        return result;
+    }
+
+    private void init() {
+        base = new int[0];
+        check = new int[0];
+        outputs = new Object[0];
+        nextEmpty = new int[0];
+        prevEmpty = new int[0];
+        failures = new byte[0];
+        firstEmpty = -1;
+        lastEmpty = -1;
+        capacity = 0;
+        maxSlot = -1;
+        usedBases = new BitSet();
+    }
+
+    private int place(State<T> state) {
+        final int numCodes = state.numTransitions() + (state.isFinal ? 1 : 0);
+        final int[] codes = new int[numCodes];
+        int n = 0;
+        if (state.isFinal) {
+            codes[n++] = DoubleArrayFST.FINAL_CODE;
+        }
+        for (int i = 0; i < state.numTransitions(); i++) {
+            codes[n++] = DoubleArrayFST.code(state.label(i));
+        }
+        Arrays.sort(codes);
+
+        final int node = findBase(codes);
+        usedBases.set(node);
+        if (node + BLOCK_SIZE > capacity) {
+            grow(node + BLOCK_SIZE);
+        }
+        if (state.isFinal) {
+            occupy(node, DoubleArrayFST.FINAL_CODE, state.output);
+        }
+        for (int i = 0; i < state.numTransitions(); i++) {
+            final int code = DoubleArrayFST.code(state.label(i));
+            occupy(node + code, code, state.transitionOutput(i));
+        }
+        return node;
+    }
+
+    private int findBase(int[] codes) {
+        if (codes.length == 0) {
+            // a node without slots only needs a distinct base
+            return usedBases.nextClearBit(0);
+        }
+        for (int slot = firstEmpty; slot >= 0;) {
+            final int node = slot - codes[0];
+            if (node >= 0 && !usedBases.get(node) && fits(node, codes)) {
+                return node;
+            }
+            final int next = nextEmpty[slot];
+            if (++failures[slot] == MAX_FAILURES) {
+                unlink(slot);
+            }
+            slot = next;
+        }
+        int node = Math.max(capacity - codes[0], 0);
+        while (usedBases.get(node)) {
+            node++;
+        }
+        return node;
+    }
+
+    private boolean fits(int node, int[] codes) {
+        for (int i = 1; i < codes.length; i++) {
+            final int slot = node + codes[i];
+            if (slot < capacity && check[slot] != EMPTY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void occupy(int slot, int code, Object output) {
+        assert check[slot] == EMPTY;
+        check[slot] = code;
+        outputs[slot] = output;
+        maxSlot = Math.max(maxSlot, slot);
+        if (failures[slot] < MAX_FAILURES) {
+            unlink(slot);
+        }
+    }
+
+    private void unlink(int slot) {
+        final int prev = prevEmpty[slot];
+        final int next = nextEmpty[slot];
+        if (prev >= 0) {
+            nextEmpty[prev] = next;
+        } else {
+            firstEmpty = next;
+        }
+        if (next >= 0) {
+            prevEmpty[next] = prev;
+        } else {
+            lastEmpty = prev;
+        }
+    }
+
+    private void grow(int minCapacity) {
+        final int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+        base = Arrays.copyOf(base, newCapacity);
+        check = Arrays.copyOf(check, newCapacity);
+        outputs = Arrays.copyOf(outputs, newCapacity);
+        nextEmpty = Arrays.copyOf(nextEmpty, newCapacity);
+        prevEmpty = Arrays.copyOf(prevEmpty, newCapacity);
+        failures = Arrays.copyOf(failures, newCapacity);
+        for (int slot = capacity; slot < newCapacity; slot++) {
+            check[slot] = EMPTY;
+            prevEmpty[slot] = lastEmpty;
+            nextEmpty[slot] = -1;
+            if (lastEmpty >= 0) {
+                nextEmpty[lastEmpty] = slot;
+            } else {
+                firstEmpty = slot;
+            }
+            lastEmpty = slot;
+        }
+        capacity = newCapacity;
+    }
+}
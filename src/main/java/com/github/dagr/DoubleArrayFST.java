@@ -0,0 +1,341 @@
+package com.github.dagr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * FST compiled into a double array.
+ *
+ * A node is identified by its base value. The transition labeled with byte
+ * {@code b} from node {@code n} is stored at index {@code n + code(b)} where
+ * {@code code(b)} is the unsigned value of {@code b} plus one, and it is valid
+ * only if {@code check} at that index equals {@code code(b)}. Index {@code n}
+ * itself (code 0) marks a final node. Every node has a distinct base, so
+ * checking labels instead of parents is enough to reject foreign slots.
+ *
+ * The arrays are read through buffers, so an instance loaded by
+ * {@link #load(Path, FSTBuilder)} runs lookups directly against the mapped
+ * file. The file is laid out in little endian as follows.
+ *
+ * <pre>
+ * int     magic
+ * int     version
+ * int     initial node
+ * int     number of slots
+ * int     length of output data
+ * int     reserved
+ * long    CRC32 of everything after the header
+ * int[]   base
+ * int[]   check
+ * int[]   offsets of outputs in output data, or -1
+ * byte[]  output data, encoded by the output algebra
+ * </pre>
+ */
+public class DoubleArrayFST<T> {
+    static final int EMPTY = -1;
+    static final int FINAL_CODE = 0;
+
+    static final int MAGIC = 0x43444152; // "CDAR"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    static final int NO_OUTPUT = -1;
+
+    final IntBuffer base;
+    final IntBuffer check;
+    // transition outputs at transition slots, state outputs at final slots.
+    // compiled instances hold Optional objects; loaded instances decode outputs from the buffer.
+    final Object[] outputs;
+    final IntBuffer outputOffsets;
+    final ByteBuffer outputData;
+    final int initialNode;
+    final FSTBuilder<T> algebra;
+    final Optional<T> defaultOutput;
+
+    DoubleArrayFST(int[] base, int[] check, Object[] outputs, int initialNode, FSTBuilder<T> algebra) {
+        this(IntBuffer.wrap(base), IntBuffer.wrap(check), outputs, null, null, initialNode, algebra);
+    }
+
+    private DoubleArrayFST(IntBuffer base, IntBuffer check, Object[] outputs, IntBuffer outputOffsets,
+            ByteBuffer outputData, int initialNode, FSTBuilder<T> algebra) {
+        this.base = base;
+        this.check = check;
+        this.outputs = outputs;
+        this.outputOffsets = outputOffsets;
+        this.outputData = outputData;
+        this.initialNode = initialNode;
+        this.algebra = algebra;
+        this.defaultOutput = Optional.of(algebra.defaultValue());
+    }
+
+    static int code(byte label) {
+        return (((int) label) & 0xFF) + 1;
+    }
+
+    public int initialNode() {
+        return initialNode;
+    }
+
+    /**
+     * Returns the slot of the transition labeled with {@code label} from
+     * {@code node}, or -1 if there is no such transition.
+     */
+    int slot(int node, byte label) {
+        final int code = code(label);
+        final int slot = node + code;
+        if (node < 0 || slot >= check.limit() || check.get(slot) != code) {
+            return -1;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the node reached from {@code node} by {@code label}, or -1 if
+     * there is no such transition.
+     */
+    public int transit(int node, byte label) {
+        final int slot = slot(node, label);
+        return slot < 0 ? -1 : base.get(slot);
+    }
+
+    public Optional<T> transitOutput(int node, byte label) {
+        final int slot = slot(node, label);
+        return slot < 0 ? Optional.empty() : output(slot);
+    }
+
+    public boolean isFinal(int node) {
+        return node >= 0 && node < check.limit() && check.get(node) == FINAL_CODE;
+    }
+
+    public Optional<T> getStateOutput(int node) {
+        return isFinal(node) ? output(node) : Optional.empty();
+    }
+
+    /**
+     * Returns the output of {@code key}, or empty if {@code key} is not accepted.
+     */
+    public Optional<T> get(byte[] key) {
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * Returns the output of the key {@code buf[off, off + len)}, or empty if the
+     * key is not accepted.
+     */
+    public Optional<T> get(byte[] buf, int off, int len) {
+        int node = initialNode;
+        Optional<T> output = Optional.empty();
+        for (int i = off; i < off + len; i++) {
+            final int slot = slot(node, buf[i]);
+            if (slot < 0) {
+                return Optional.empty();
+            }
+            final Optional<T> transitionOutput = output(slot);
+            if (transitionOutput.isPresent()) {
+                output = algebra.concat(output, transitionOutput);
+            }
+            node = base.get(slot);
+        }
+        if (!isFinal(node)) {
+            return Optional.empty();
+        }
+        final Optional<T> stateOutput = output(node);
+        if (stateOutput.isPresent()) {
+            output = algebra.concat(output, stateOutput);
+        }
+        return output.isPresent() ? output : defaultOutput;
+    }
+
+    /**
+     * Reports every accepted key that is a prefix of {@code buf[off, off + len)}
+     * to {@code consumer} in a single pass.
+     */
+    public void commonPrefixSearch(byte[] buf, int off, int len, PrefixMatchConsumer<T> consumer) {
+        int node = initialNode;
+        Optional<T> output = Optional.empty();
+        for (int i = off; ; i++) {
+            if (isFinal(node)) {
+                final Optional<T> stateOutput = output(node);
+                final Optional<T> matched = stateOutput.isPresent() ? algebra.concat(output, stateOutput) : output;
+                consumer.accept(i - off, matched.isPresent() ? matched.get() : defaultOutput.get());
+            }
+            if (i == off + len) {
+                return;
+            }
+            final int slot = slot(node, buf[i]);
+            if (slot < 0) {
+                return;
+            }
+            final Optional<T> transitionOutput = output(slot);
+            if (transitionOutput.isPresent()) {
+                output = algebra.concat(output, transitionOutput);
+            }
+            node = base.get(slot);
+        }
+    }
+
+    /**
+     * Returns the number of allocated slots.
+     */
+    public int size() {
+        return check.limit();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<T> output(int slot) {
+        if (outputs != null) {
+            return (Optional<T>) outputs[slot];
+        }
+        final int offset = outputOffsets.get(slot);
+        return offset == NO_OUTPUT ? Optional.empty() : Optional.of(algebra.readOutput(outputData, offset));
+    }
+
+    /**
+     * Writes this FST to {@code path}, replacing the existing file.
+     */
+    public void save(Path path) throws IOException {
+        final int size = size();
+        final IntBuffer offsets;
+        final ByteBuffer data;
+        if (outputs != null) {
+            // encode every distinct output value once; values are compared by
+            // their encodings, so that equal outputs held by distinct objects
+            // (boxed numbers, byte arrays) share one entry
+            offsets = IntBuffer.allocate(size);
+            final Map<ByteBuffer, Integer> encoded = new HashMap<>();
+            final var out = new ByteArrayOutputStream();
+            for (int slot = 0; slot < size; slot++) {
+                @SuppressWarnings("unchecked")
+                final Optional<T> output = (Optional<T>) outputs[slot];
+                if (output == null || output.isEmpty()) {
+                    offsets.put(slot, NO_OUTPUT);
+                    continue;
+                }
+                final ByteBuffer encoding = ByteBuffer.allocate(algebra.outputSize(output.get()))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                algebra.writeOutput(output.get(), encoding);
+                encoding.flip();
+                final Integer offset = encoded.get(encoding);
+                if (offset != null) {
+                    offsets.put(slot, offset);
+                } else {
+                    if (out.size() > Integer.MAX_VALUE - encoding.remaining()) {
+                        throw new IOException("Outputs too large to save: " + path);
+                    }
+                    encoded.put(encoding, out.size());
+                    offsets.put(slot, out.size());
+                    out.write(encoding.array(), 0, encoding.remaining());
+                }
+            }
+            data = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            offsets = outputOffsets;
+            data = outputData.duplicate();
+        }
+
+        final long bodyLength = bodyLength(size, data.remaining());
+        if (bodyLength > Integer.MAX_VALUE) {
+            throw new IOException("FST too large to save (" + bodyLength + " bytes): " + path);
+        }
+        final ByteBuffer body = ByteBuffer.allocate((int) bodyLength).order(ByteOrder.LITTLE_ENDIAN);
+        final IntBuffer ints = body.asIntBuffer();
+        ints.put(base.duplicate().position(0).limit(size));
+        ints.put(check.duplicate().position(0).limit(size));
+        ints.put(offsets.duplicate().position(0).limit(size));
+        body.position((int) bodyLength - data.remaining());
+        body.put(data.duplicate());
+        body.flip();
+
+        final var crc = new CRC32();
+        crc.update(body.duplicate());
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(initialNode).putInt(size).putInt(data.remaining()).putInt(0)
+                .putLong(crc.getValue());
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+        }
+    }
+
+    /**
+     * Maps the FST saved at {@code path} into memory. Outputs are decoded with
+     * {@code algebra}, which must be of the same kind as the one the FST was
+     * built with.
+     */
+    public static <T> DoubleArrayFST<T> load(Path path, FSTBuilder<T> algebra) throws IOException {
+        return load(path, algebra, true);
+    }
+
+    /**
+     * Maps the FST saved at {@code path} into memory. If {@code verify} is
+     * false, the checksum is not checked, so that loading does not touch every
+     * page of the file.
+     */
+    public static <T> DoubleArrayFST<T> load(Path path, FSTBuilder<T> algebra, boolean verify) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Truncated header: " + path);
+            }
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + path);
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a double array FST: " + path);
+        }
+        final int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + ": " + path);
+        }
+        final int initialNode = buffer.getInt(8);
+        final int size = buffer.getInt(12);
+        final int dataLength = buffer.getInt(16);
+        final long checksum = buffer.getLong(24);
+
+        if (size < 0 || dataLength < 0 || buffer.capacity() != HEADER_SIZE + bodyLength(size, dataLength)) {
+            throw new IOException("Corrupted length: " + path);
+        }
+        final ByteBuffer body = buffer.position(HEADER_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (verify) {
+            final var crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Checksum mismatch: " + path);
+            }
+        }
+
+        final IntBuffer ints = body.asIntBuffer();
+        final IntBuffer base = ints.duplicate().position(0).limit(size).slice();
+        final IntBuffer check = ints.duplicate().position(size).limit(size * 2).slice();
+        final IntBuffer offsets = ints.duplicate().position(size * 2).limit(size * 3).slice();
+        // the length check above keeps these positions within int range
+        final ByteBuffer data = body.duplicate().position(body.capacity() - dataLength).slice()
+                .order(ByteOrder.LITTLE_ENDIAN);
+        return new DoubleArrayFST<T>(base, check, null, offsets, data, initialNode, algebra);
+    }
+
+    private static long bodyLength(int size, int dataLength) {
+        return (long) size * Integer.BYTES * 3 + dataLength;
+    }
+}
@@ -0,0 +1,341 @@
+package com.github.dagr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sorts entries in the order required by {@link FSTBuilder}, spilling to disk
+ * when they do not fit in memory.
+ *
+ * Entries are collected into chunks, which are sorted in parallel and written
+ * to temporary files. The files are merged lazily while the builder consumes
+ * the returned stream. Sorting is stable, so among duplicate keys the entry
+ * read first comes first.
+ */
+public class ExternalSorter<T> {
+    public enum DuplicateKeys {
+        /** Throw {@link IllegalArgumentException} on a duplicate key. */
+        FAIL,
+        /** Keep the entry read first. */
+        KEEP_FIRST,
+        /** Keep the entry read last. */
+        KEEP_LAST,
+    }
+
+    private static final Comparator<Map.Entry<byte[], ?>> ORDER = (a, b) -> FSTBuilder.compare(a.getKey(),
+            b.getKey());
+
+    // encodes outputs in spill files
+    private final FSTBuilder<T> codec;
+    private Path tempDir;
+    private int chunkSize = 1 << 20;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private DuplicateKeys duplicateKeys = DuplicateKeys.FAIL;
+
+    public ExternalSorter(FSTBuilder<T> codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Sets the directory of spill files. The default temporary-file directory
+     * is used if not set.
+     */
+    public void setTempDir(Path tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Sets the number of entries held in memory per chunk.
+     */
+    public void setChunkSize(int chunkSize) {
+        assert chunkSize > 0;
+        this.chunkSize = chunkSize;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void setDuplicateKeys(DuplicateKeys duplicateKeys) {
+        this.duplicateKeys = duplicateKeys;
+    }
+
+    /**
+     * Consumes {@code entries} and returns them sorted by unsigned bytes of
+     * keys. Closing the returned stream closes and deletes the spill files,
+     * also when the stream is consumed only partially.
+     */
+    public Stream<Map.Entry<byte[], T>> sort(Stream<Map.Entry<byte[], T>> entries) throws IOException {
+        final List<Path> spills = new ArrayList<>();
+        final Deque<ForkJoinTask<Path>> pending = new ArrayDeque<>();
+        final List<SpillReader> readers = new ArrayList<>();
+        boolean isSorted = false;
+        try {
+            List<Map.Entry<byte[], T>> chunk = new ArrayList<>();
+            final Iterator<Map.Entry<byte[], T>> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() < chunkSize) {
+                    continue;
+                }
+                final List<Map.Entry<byte[], T>> full = chunk;
+                pending.add(pool.submit(() -> spill(full)));
+                chunk = new ArrayList<>();
+                // bound the chunks held in memory
+                while (pending.size() > pool.getParallelism()) {
+                    spills.add(pending.poll().join());
+                }
+            }
+            while (!pending.isEmpty()) {
+                spills.add(pending.poll().join());
+            }
+
+            chunk.sort(ORDER);
+            final Stream<Map.Entry<byte[], T>> sorted;
+            if (spills.isEmpty()) {
+                sorted = dedupe(chunk.iterator(), null);
+            } else {
+                final List<Iterator<Map.Entry<byte[], T>>> runs = new ArrayList<>();
+                for (Path spill : spills) {
+                    final var reader = new SpillReader(spill);
+                    readers.add(reader);
+                    runs.add(reader);
+                }
+                // the chunk in memory was read last
+                runs.add(chunk.iterator());
+                sorted = dedupe(new MergingIterator(runs), () -> cleanUp(readers, spills));
+            }
+            isSorted = true;
+            return sorted;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (!isSorted) {
+                // wait for pending spills so that they are deleted too; cancelling a
+                // forked task does not stop it once it runs
+                for (ForkJoinTask<Path> task : pending) {
+                    try {
+                        spills.add(task.join());
+                    } catch (RuntimeException e) {
+                        // failed without a spill
+                    }
+                }
+                cleanUp(readers, spills);
+            }
+        }
+    }
+
+    private Path spill(List<Map.Entry<byte[], T>> chunk) {
+        chunk.sort(ORDER);
+        try {
+            final Path path = tempDir == null ? Files.createTempFile("dagr-sort", ".spill")
+                    : Files.createTempFile(tempDir, "dagr-sort", ".spill");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+                for (Map.Entry<byte[], T> entry : chunk) {
+                    final byte[] key = entry.getKey();
+                    final ByteBuffer output = ByteBuffer.allocate(codec.outputSize(entry.getValue()));
+                    codec.writeOutput(entry.getValue(), output);
+                    out.writeInt(key.length);
+                    out.write(key);
+                    out.writeInt(output.capacity());
+                    out.write(output.array());
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                deleteAll(List.of(path));
+                throw e;
+            }
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void cleanUp(List<? extends Closeable> readers, List<Path> spills) {
+        for (Closeable reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+        }
+        deleteAll(spills);
+    }
+
+    private static void deleteAll(List<Path> paths) {
+        for (Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // leave it to the temporary-file cleanup
+            }
+        }
+    }
+
+    private Stream<Map.Entry<byte[], T>> dedupe(Iterator<Map.Entry<byte[], T>> sorted, Runnable onClose) {
+        final Iterator<Map.Entry<byte[], T>> unique = new Iterator<>() {
+            private Map.Entry<byte[], T> next = sorted.hasNext() ? sorted.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<byte[], T> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<byte[], T> current = next;
+                next = sorted.hasNext() ? sorted.next() : null;
+                while (next != null && FSTBuilder.compare(current.getKey(), next.getKey()) == 0) {
+                    switch (duplicateKeys) {
+                    case FAIL:
+                        throw new IllegalArgumentException(
+                                "Duplicate key: " + new String(current.getKey(), StandardCharsets.UTF_8));
+                    case KEEP_LAST:
+                        current = next;
+                        break;
+                    case KEEP_FIRST:
+                        break;
+                    }
+                    next = sorted.hasNext() ? sorted.next() : null;
+                }
+                return current;
+            }
+        };
+        final Stream<Map.Entry<byte[], T>> stream = StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(unique, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        return onClose == null ? stream : stream.onClose(onClose);
+    }
+
+    private class SpillReader implements Iterator<Map.Entry<byte[], T>>, Closeable {
+        private final DataInputStream in;
+        private Map.Entry<byte[], T> next;
+
+        SpillReader(Path path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        private void advance() {
+            try {
+                final int keyLength;
+                try {
+                    keyLength = in.readInt();
+                } catch (EOFException e) {
+                    close();
+                    return;
+                }
+                final byte[] key = new byte[keyLength];
+                in.readFully(key);
+                final byte[] output = new byte[in.readInt()];
+                in.readFully(output);
+                next = Map.entry(key, codec.readOutput(ByteBuffer.wrap(output), 0));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<byte[], T> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<byte[], T> current = next;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            next = null;
+            in.close();
+        }
+    }
+
+    /**
+     * Merges sorted runs. Ties are broken by the index of the run, which keeps
+     * the merge stable.
+     */
+    private class MergingIterator implements Iterator<Map.Entry<byte[], T>> {
+        private final PriorityQueue<Head> heads;
+
+        private class Head {
+            final int run;
+            final Iterator<Map.Entry<byte[], T>> iterator;
+            Map.Entry<byte[], T> entry;
+
+            Head(int run, Iterator<Map.Entry<byte[], T>> iterator) {
+                this.run = run;
+                this.iterator = iterator;
+                this.entry = iterator.next();
+            }
+        }
+
+        MergingIterator(List<Iterator<Map.Entry<byte[], T>>> runs) {
+            this.heads = new PriorityQueue<>(Math.max(runs.size(), 1), (a, b) -> {
+                final int c = FSTBuilder.compare(a.entry.getKey(), b.entry.getKey());
+                return c != 0 ? c : Integer.compare(a.run, b.run);
+            });
+            for (int i = 0; i < runs.size(); i++) {
+                if (runs.get(i).hasNext()) {
+                    heads.add(new Head(i, runs.get(i)));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<byte[], T> next() {
+            final Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<byte[], T> entry = head.entry;
+            if (head.iterator.hasNext()) {
+                head.entry = head.iterator.next();
+                heads.add(head);
+            }
+            return entry;
+        }
+    }
+}
@@ -1,31 +1,633 @@
 package com.github.dagr;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.Set;
+import java.util.stream.Stream;
 
+/**
+ * Minimized FST of keys and outputs. An FST is immutable once built, so it can
+ * be shared by any number of threads; each thread traverses it with its own
+ * {@link Cursor} or {@link PredictiveCursor}.
+ */
 public class FST<T> implements Iterable<State<T>> {
-    final Set<FrozenState<T>> states;
+    final List<FrozenState<T>> states;
     final FrozenState<T> initialState;
+    // output algebra of the builder, used to sum up outputs along a path
+    final FSTBuilder<T> algebra;
+    // returned for accepted keys without outputs, so that lookups do not allocate
+    final Optional<T> defaultOutput;
+    // counters of lookups, or null
+    private final LookupStats lookupStats;
+    // ranks of the transitions of every state, computed on the first ordinal
+    // lookup so that FSTs without ordinal lookups do not pay for them
+    private volatile Ranks ranks;
 
-    FST(StatesDict<T> dict, FrozenState<T> initialState) {
-        this.states = dict.states();
+    FST(StatesDict<T> dict, FrozenState<T> initialState, FSTBuilder<T> algebra) {
+        this(dict.states(), initialState, algebra);
+    }
+
+    FST(List<FrozenState<T>> states, FrozenState<T> initialState, FSTBuilder<T> algebra) {
+        this.states = Collections.unmodifiableList(states);
         this.initialState = initialState;
+        this.algebra = algebra;
+        this.defaultOutput = Optional.of(algebra.defaultValue());
+        this.lookupStats = null;
+    }
+
+    private FST(FST<T> fst, LookupStats lookupStats) {
+        this.states = fst.states;
+        this.initialState = fst.initialState;
+        this.algebra = fst.algebra;
+        this.defaultOutput = fst.defaultOutput;
+        this.lookupStats = lookupStats;
+        this.ranks = fst.ranks;
+    }
+
+    /**
+     * Returns a view of this FST which counts its lookups by
+     * {@link #get(byte[], int, int)} in {@code lookupStats}. The view shares
+     * the states with this FST.
+     */
+    public FST<T> withLookupStats(LookupStats lookupStats) {
+        return new FST<T>(this, lookupStats);
+    }
+
+    /**
+     * Reads an FST written by {@link FSTBuilder#build(Stream, WritableByteChannel)}.
+     * Outputs are decoded with {@code algebra}, which must be of the same kind
+     * as the one the FST was built with.
+     */
+    public static <T> FST<T> read(ReadableByteChannel in, FSTBuilder<T> algebra) throws IOException {
+        return StreamingStatesDict.read(in, algebra);
     }
 
     public FrozenState<T> initialState() {
         return initialState;
     }
 
+    /**
+     * Returns the output of {@code key}, or empty if {@code key} is not accepted.
+     */
+    public Optional<T> get(byte[] key) {
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * Returns the output of the key {@code buf[off, off + len)}, or empty if the
+     * key is not accepted.
+     */
+    public Optional<T> get(byte[] buf, int off, int len) {
+        State<T> state = initialState;
+        Optional<T> output = Optional.empty();
+        for (int i = off; i < off + len; i++) {
+            final int t = state.find(buf[i]);
+            if (t < 0) {
+                if (lookupStats != null) {
+                    lookupStats.record(i - off, false);
+                }
+                return Optional.empty();
+            }
+            final Optional<T> transitionOutput = state.transitionOutput(t);
+            if (transitionOutput.isPresent()) {
+                output = algebra.concat(output, transitionOutput);
+            }
+            state = state.nextState(t);
+        }
+        if (lookupStats != null) {
+            lookupStats.record(len, state.isFinal);
+        }
+        if (!state.isFinal) {
+            return Optional.empty();
+        }
+        if (state.output.isPresent()) {
+            output = algebra.concat(output, state.output);
+        }
+        return output.isPresent() ? output : defaultOutput;
+    }
+
+    /**
+     * Looks up {@code keys} and stores the output of {@code keys[i]} in
+     * {@code outputs[i]}, or null if it is not accepted.
+     *
+     * Each lookup resumes from the deepest state on the path of the previous
+     * key which is shared with the current key, so keys sorted in unsigned
+     * byte order walk each common prefix only once. Keys in any other order
+     * are looked up correctly, but share less.
+     *
+     * @return the number of accepted keys
+     */
+    public int getAll(byte[][] keys, T[] outputs) {
+        assert outputs.length >= keys.length;
+        State<T>[] path = newStates(16);
+        // outputs summed up to the states on the path
+        Optional<T>[] sums = newOutputs(16);
+        path[0] = initialState;
+        sums[0] = Optional.empty();
+        byte[] prevKey = new byte[0];
+        int depth = 0;
+        int numFound = 0;
+        for (int k = 0; k < keys.length; k++) {
+            final byte[] key = keys[k];
+            if (path.length <= key.length) {
+                path = Arrays.copyOf(path, Math.max(key.length + 1, path.length * 2));
+                sums = Arrays.copyOf(sums, path.length);
+            }
+            // the path of the previous key is valid up to the depth it reached
+            int d = Math.min(FSTBuilder.prefixLength(prevKey, key), depth);
+            while (d < key.length) {
+                final State<T> state = path[d];
+                final int t = state.find(key[d]);
+                if (t < 0) {
+                    break;
+                }
+                final Optional<T> transitionOutput = state.transitionOutput(t);
+                sums[d + 1] = transitionOutput.isPresent() ? algebra.concat(sums[d], transitionOutput) : sums[d];
+                path[d + 1] = state.nextState(t);
+                d++;
+            }
+            depth = d;
+            prevKey = key;
+
+            final State<T> state = path[d];
+            if (d < key.length || !state.isFinal) {
+                outputs[k] = null;
+                continue;
+            }
+            final Optional<T> output = state.output.isPresent() ? algebra.concat(sums[d], state.output) : sums[d];
+            outputs[k] = output.isPresent() ? output.get() : defaultOutput.get();
+            numFound++;
+        }
+        return numFound;
+    }
+
+    /**
+     * Stores the {@link #ordinal(byte[]) ordinal} of {@code keys[i]} in
+     * {@code ordinals[i]}, or -1 if it is not accepted. Lookups share the
+     * prefixes of consecutive keys like {@link #getAll(byte[][], Object[])}.
+     *
+     * @return the number of accepted keys
+     */
+    public int ordinals(byte[][] keys, long[] ordinals) {
+        assert ordinals.length >= keys.length;
+        final Ranks ranks = ranks();
+        State<T>[] path = newStates(16);
+        // ordinals summed up to the states on the path
+        long[] sums = new long[16];
+        path[0] = initialState;
+        byte[] prevKey = new byte[0];
+        int depth = 0;
+        int numFound = 0;
+        for (int k = 0; k < keys.length; k++) {
+            final byte[] key = keys[k];
+            if (path.length <= key.length) {
+                path = Arrays.copyOf(path, Math.max(key.length + 1, path.length * 2));
+                sums = Arrays.copyOf(sums, path.length);
+            }
+            int d = Math.min(FSTBuilder.prefixLength(prevKey, key), depth);
+            while (d < key.length) {
+                final State<T> state = path[d];
+                final int t = state.find(key[d]);
+                if (t < 0) {
+                    break;
+                }
+                sums[d + 1] = sums[d] + ranks.rank(state, t);
+                path[d + 1] = state.nextState(t);
+                d++;
+            }
+            depth = d;
+            prevKey = key;
+
+            if (d < key.length || !path[d].isFinal) {
+                ordinals[k] = -1;
+                continue;
+            }
+            ordinals[k] = sums[d];
+            numFound++;
+        }
+        return numFound;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> State<T>[] newStates(int length) {
+        return (State<T>[]) new State[length];
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> Optional<T>[] newOutputs(int length) {
+        return (Optional<T>[]) new Optional[length];
+    }
+
+    /**
+     * Ranks of the transitions of all states. For the {@code t}-th transition
+     * of a state, {@code rank(state, t)} is the number of keys accepted from
+     * the state that sort before the keys reached by the transition, that is
+     * the key ending at the state if it is final and the keys under smaller
+     * labels. The ranks of a state are stored next to each other in one array
+     * and followed by the number of keys accepted from the state, so that a
+     * rank is read in constant time.
+     */
+    private static final class Ranks {
+        // index of the first rank of each state by id
+        final int[] offsets;
+        final long[] ranks;
+
+        Ranks(List<? extends FrozenState<?>> states) {
+            offsets = new int[states.size()];
+            long numRanks = 0;
+            for (FrozenState<?> state : states) {
+                numRanks += state.numTransitions() + 1;
+            }
+            if (numRanks > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many transitions to rank: " + numRanks);
+            }
+            ranks = new long[(int) numRanks];
+            // states are in id order, so next states are ranked before the states referring to them
+            int offset = 0;
+            for (FrozenState<?> state : states) {
+                final int id = state.id;
+                offsets[id] = offset;
+                long rank = state.isFinal ? 1 : 0;
+                for (int i = 0; i < state.numTransitions(); i++) {
+                    ranks[offset++] = rank;
+                    final int next = ((FrozenState<?>) state.nextState(i)).id;
+                    assert next < id;
+                    rank += numKeys(next);
+                }
+                ranks[offset++] = rank;
+            }
+        }
+
+        long rank(State<?> state, int t) {
+            return ranks[offsets[((FrozenState<?>) state).id] + t];
+        }
+
+        long numKeys(int id) {
+            final int end = id + 1 < offsets.length ? offsets[id + 1] : ranks.length;
+            return ranks[end - 1];
+        }
+
+        /**
+         * Returns the transition of {@code state} which reaches the key of
+         * rank {@code rank} among the keys accepted from {@code state}, by a
+         * binary search over the ranks of its transitions.
+         */
+        int find(State<?> state, long rank) {
+            final int offset = offsets[((FrozenState<?>) state).id];
+            int low = 0;
+            int high = state.numTransitions() - 1;
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (ranks[offset + mid] <= rank) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    private Ranks ranks() {
+        Ranks ranks = this.ranks;
+        if (ranks == null) {
+            ranks = new Ranks(states);
+            // racing threads compute the same ranks, so either may win
+            this.ranks = ranks;
+        }
+        return ranks;
+    }
+
+    /**
+     * Returns the number of accepted keys like {@link #numKeys()}, but does
+     * not keep the ranks of transitions unless they are kept already.
+     */
+    long countKeys() {
+        final Ranks ranks = this.ranks;
+        if (ranks != null) {
+            return ranks.numKeys(initialState.id);
+        }
+        // states are in id order, so next states are counted before the states referring to them
+        final long[] counts = new long[states.size()];
+        for (FrozenState<T> state : states) {
+            long count = state.isFinal ? 1 : 0;
+            for (int i = 0; i < state.numTransitions(); i++) {
+                count += counts[((FrozenState<T>) state.nextState(i)).id];
+            }
+            counts[state.id] = count;
+        }
+        return counts[initialState.id];
+    }
+
+    /**
+     * Returns the number of accepted keys. The first call of this or of an
+     * ordinal lookup ranks the transitions of every state, which takes a pass
+     * over the states and keeps 8 bytes per transition and 12 bytes per
+     * state. Ranks are then read in constant time, so that
+     * {@link #ordinal(byte[])} takes time linear in the length of the key,
+     * and {@link #key(long)} adds a binary search over the transitions of each
+     * state on the path.
+     */
+    public long numKeys() {
+        return ranks().numKeys(initialState.id);
+    }
+
+    /**
+     * Returns the position of {@code key} among the accepted keys in sorted
+     * order, or -1 if {@code key} is not accepted.
+     */
+    public long ordinal(byte[] key) {
+        return ordinal(key, 0, key.length);
+    }
+
+    /**
+     * Returns the position of the key {@code buf[off, off + len)} among the
+     * accepted keys in sorted order, or -1 if the key is not accepted.
+     */
+    public long ordinal(byte[] buf, int off, int len) {
+        final Ranks ranks = ranks();
+        State<T> state = initialState;
+        long ordinal = 0;
+        for (int i = off; i < off + len; i++) {
+            final int t = state.find(buf[i]);
+            if (t < 0) {
+                return -1;
+            }
+            // the key ending here and the keys under smaller labels sort first
+            ordinal += ranks.rank(state, t);
+            state = state.nextState(t);
+        }
+        return state.isFinal ? ordinal : -1;
+    }
+
+    /**
+     * Returns the key at {@code ordinal} among the accepted keys in sorted
+     * order.
+     *
+     * @throws IndexOutOfBoundsException if {@code ordinal} is out of range
+     */
+    public byte[] key(long ordinal) {
+        final Ranks ranks = ranks();
+        checkOrdinal(ordinal, ranks);
+        byte[] key = new byte[16];
+        int length = 0;
+        State<T> state = initialState;
+        long remaining = ordinal;
+        while (!state.isFinal || remaining > 0) {
+            final int t = ranks.find(state, remaining);
+            remaining -= ranks.rank(state, t);
+            if (length == key.length) {
+                key = Arrays.copyOf(key, length * 2);
+            }
+            key[length++] = state.label(t);
+            state = state.nextState(t);
+        }
+        return Arrays.copyOf(key, length);
+    }
+
+    /**
+     * Returns the output of the key at {@code ordinal} among the accepted keys
+     * in sorted order, such as the output of a {@link Lattice} match.
+     *
+     * @throws IndexOutOfBoundsException if {@code ordinal} is out of range
+     */
+    public T output(long ordinal) {
+        final Ranks ranks = ranks();
+        checkOrdinal(ordinal, ranks);
+        State<T> state = initialState;
+        Optional<T> output = Optional.empty();
+        long remaining = ordinal;
+        while (!state.isFinal || remaining > 0) {
+            final int t = ranks.find(state, remaining);
+            remaining -= ranks.rank(state, t);
+            final Optional<T> transitionOutput = state.transitionOutput(t);
+            if (transitionOutput.isPresent()) {
+                output = algebra.concat(output, transitionOutput);
+            }
+            state = state.nextState(t);
+        }
+        if (state.output.isPresent()) {
+            output = algebra.concat(output, state.output);
+        }
+        return output.isPresent() ? output.get() : defaultOutput.get();
+    }
+
+    private void checkOrdinal(long ordinal, Ranks ranks) {
+        final long numKeys = ranks.numKeys(initialState.id);
+        if (ordinal < 0 || ordinal >= numKeys) {
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of " + numKeys + " keys");
+        }
+    }
+
+    /**
+     * Reports every accepted key that is a prefix of {@code buf[off, off + len)}
+     * to {@code consumer} in a single pass.
+     */
+    public void commonPrefixSearch(byte[] buf, int off, int len, PrefixMatchConsumer<T> consumer) {
+        State<T> state = initialState;
+        Optional<T> output = Optional.empty();
+        for (int i = off; ; i++) {
+            if (state.isFinal) {
+                final Optional<T> matched = state.output.isPresent() ? algebra.concat(output, state.output) : output;
+                consumer.accept(i - off, matched.isPresent() ? matched.get() : defaultOutput.get());
+            }
+            if (i == off + len) {
+                return;
+            }
+            final int t = state.find(buf[i]);
+            if (t < 0) {
+                return;
+            }
+            final Optional<T> transitionOutput = state.transitionOutput(t);
+            if (transitionOutput.isPresent()) {
+                output = algebra.concat(output, transitionOutput);
+            }
+            state = state.nextState(t);
+        }
+    }
+
+    /**
+     * Fills {@code lattice} with every key that occurs in
+     * {@code buf[off, off + len)}, in order of start then end positions.
+     * Positions are relative to {@code off}, and each match is identified by
+     * the {@link #ordinal(byte[]) ordinal} of its key, whose output is
+     * returned by {@link #output(long)}. Matches are found by walking from the
+     * initial state once per start position without computing outputs, so
+     * building a lattice does not allocate unless the lattice grows.
+     */
+    public void lattice(byte[] buf, int off, int len, Lattice lattice) {
+        lattice(buf, null, off, len, lattice);
+    }
+
+    /**
+     * Fills {@code lattice} with every key that occurs in the remaining bytes
+     * of {@code buf}, like {@link #lattice(byte[], int, int, Lattice)}.
+     * Positions are relative to the position of {@code buf}, which is left
+     * unchanged.
+     */
+    public void lattice(ByteBuffer buf, Lattice lattice) {
+        lattice(null, buf, buf.position(), buf.remaining(), lattice);
+    }
+
+    // reads the text from either array or buffer, so that neither is wrapped into the other
+    private void lattice(byte[] array, ByteBuffer buffer, int off, int len, Lattice lattice) {
+        lattice.clear();
+        final Ranks ranks = ranks();
+        for (int start = 0; start < len; start++) {
+            State<T> state = initialState;
+            long ordinal = 0;
+            for (int i = off + start; i < off + len; i++) {
+                final int t = state.find(array != null ? array[i] : buffer.get(i));
+                if (t < 0) {
+                    break;
+                }
+                ordinal += ranks.rank(state, t);
+                state = state.nextState(t);
+                if (state.isFinal) {
+                    lattice.add(start, i + 1 - off, ordinal);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports every accepted key within {@code maxEdits} insertions, deletions
+     * or substitutions of bytes from {@code key} to {@code consumer}.
+     *
+     * The FST is traversed once while running a Levenshtein automaton for
+     * {@code key}, whose state is the row of edit distances from the prefix
+     * read so far to each prefix of {@code key}. A subtree is skipped as soon
+     * as every distance in the row exceeds {@code maxEdits}. Distances are
+     * counted in bytes, so an edit of a multibyte character may count more
+     * than once.
+     */
+    public void fuzzySearch(byte[] key, int maxEdits, FuzzyMatchConsumer<T> consumer) {
+        assert maxEdits >= 0;
+        // no key longer than this is within the distance
+        final int maxDepth = key.length + maxEdits;
+        final int[][] rows = new int[maxDepth + 1][key.length + 1];
+        for (int j = 0; j <= key.length; j++) {
+            rows[0][j] = j;
+        }
+        fuzzySearch(initialState, 0, Optional.empty(), key, maxEdits, rows, new byte[maxDepth], consumer);
+    }
+
+    private void fuzzySearch(State<T> state, int depth, Optional<T> output, byte[] key, int maxEdits, int[][] rows,
+            byte[] path, FuzzyMatchConsumer<T> consumer) {
+        final int[] row = rows[depth];
+        if (state.isFinal && row[key.length] <= maxEdits) {
+            final Optional<T> matched = state.output.isPresent() ? algebra.concat(output, state.output) : output;
+            consumer.accept(path, depth, row[key.length], matched.isPresent() ? matched.get() : defaultOutput.get());
+        }
+        if (depth == path.length) {
+            return;
+        }
+        final int[] next = rows[depth + 1];
+        for (int i = 0; i < state.numTransitions(); i++) {
+            final byte label = state.label(i);
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for (int j = 1; j <= key.length; j++) {
+                final int substitution = row[j - 1] + (key[j - 1] == label ? 0 : 1);
+                next[j] = Math.min(substitution, Math.min(row[j], next[j - 1]) + 1);
+                min = Math.min(min, next[j]);
+            }
+            if (min > maxEdits) {
+                continue;
+            }
+            path[depth] = label;
+            final Optional<T> transitionOutput = state.transitionOutput(i);
+            fuzzySearch(state.nextState(i), depth + 1,
+                    transitionOutput.isPresent() ? algebra.concat(output, transitionOutput) : output, key, maxEdits,
+                    rows, path, consumer);
+        }
+    }
+
+    /**
+     * Reports every accepted key matched by {@code automaton} to
+     * {@code consumer}. The FST and the automaton are traversed together, so
+     * only the pairs of states reachable by both are visited.
+     */
+    public void intersect(Automaton automaton, MatchConsumer<T> consumer) {
+        if (automaton.initialState() == Automaton.DEAD) {
+            return;
+        }
+        intersect(initialState, automaton.initialState(), 0, Optional.empty(), automaton, new byte[16], consumer);
+    }
+
+    private byte[] intersect(State<T> state, int automatonState, int depth, Optional<T> output,
+            Automaton automaton, byte[] path, MatchConsumer<T> consumer) {
+        if (state.isFinal && automaton.isAccepting(automatonState)) {
+            final Optional<T> matched = state.output.isPresent() ? algebra.concat(output, state.output) : output;
+            consumer.accept(path, depth, matched.isPresent() ? matched.get() : defaultOutput.get());
+        }
+        for (int i = 0; i < state.numTransitions(); i++) {
+            final byte label = state.label(i);
+            final int next = automaton.step(automatonState, label);
+            if (next == Automaton.DEAD) {
+                continue;
+            }
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth] = label;
+            final Optional<T> transitionOutput = state.transitionOutput(i);
+            path = intersect(state.nextState(i), next, depth + 1,
+                    transitionOutput.isPresent() ? algebra.concat(output, transitionOutput) : output, automaton, path,
+                    consumer);
+        }
+        return path;
+    }
+
+    /**
+     * Returns a cursor which reads a key byte by byte from the initial state.
+     */
+    public Cursor<T> cursor() {
+        return new Cursor<T>(this);
+    }
+
+    /**
+     * Returns a cursor over the keys starting with {@code prefix} in sorted
+     * order.
+     */
+    public PredictiveCursor<T> predictiveSearch(byte[] prefix) {
+        return predictiveSearch(prefix, 0, prefix.length);
+    }
+
+    /**
+     * Returns a cursor over the keys starting with {@code buf[off, off + len)}
+     * in sorted order.
+     */
+    public PredictiveCursor<T> predictiveSearch(byte[] buf, int off, int len) {
+        final var cursor = new PredictiveCursor<T>(this);
+        cursor.reset(buf, off, len);
+        return cursor;
+    }
+
+    /**
+     * Returns the reachable states in depth-first order from the initial
+     * state.
+     */
     @Override
     public Iterator<State<T>> iterator() {
-        HashSet<State<T>> isVisited = new HashSet<>();
-        Deque<State<T>> stack = new ArrayDeque<>();
+        // states are marked by their ids
+        final BitSet isVisited = new BitSet();
+        final Deque<State<T>> stack = new ArrayDeque<>();
         stack.push(initialState);
 
         return new Iterator<State<T>>() {
@@ -36,7 +638,7 @@ public class FST<T> implements Iterable<State<T>> {
                     if (next == null) {
                         return false;
                     }
-                    if (!isVisited.contains(next)) {
+                    if (!isVisited.get(((FrozenState<T>) next).id)) {
                         return true;
                     }
                     // exhoust visited states
@@ -46,73 +648,116 @@ public class FST<T> implements Iterable<State<T>> {
 
             @Override
             public State<T> next() {
-                while (true) {
-                    if (stack.peek() == null) {
-                        return null;
-                    }
-                    var next = stack.pop();
-                    if (!isVisited.contains(next)) {
-                        isVisited.add(next);
-                        // push to stack in reverse order
-                        for (int i = next.transitions.size() - 1; i >= 0; i--) {
-                            stack.push(next.transitions.get(i).nextState);
-                        }
-                        return next;
-                    }
-                    // skip visited states
-                    stack.pop();
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
                 }
+                final var next = stack.pop();
+                isVisited.set(((FrozenState<T>) next).id);
+                // push to stack in reverse order
+                for (int i = next.numTransitions() - 1; i >= 0; i--) {
+                    stack.push(next.nextState(i));
+                }
+                return next;
             }
         };
     }
 
     public String toDot() {
         final var dot = new StringBuilder(1024);
-        dot.append("digraph G {\n");
-        dot.append("  rankdir=LR;\n");
-        dot.append("  node [shape=circle fixedsize=true];\n");
-
-        Map<State<T>, Long> ids = new HashMap<>();
-        long maxId = 1;
-        for (State<T> state : this) {
-            ids.put(state, maxId++);
+        try {
+            writeDot(dot);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new UncheckedIOException(e);
         }
-        for (State<T> state : this) {
+        return dot.toString();
+    }
+
+    /**
+     * Writes the graph in the DOT language to {@code out}. States are written
+     * one by one in the order of their ids, which are used as node names, so
+     * nothing but the states themselves is kept in memory.
+     */
+    public void writeDot(Appendable out) throws IOException {
+        out.append("digraph G {\n");
+        out.append("  rankdir=LR;\n");
+        out.append("  node [shape=circle fixedsize=true];\n");
+        for (FrozenState<T> state : states) {
             // draw a node
-            final var stateOutput = state.getStateOutput();
-            if (stateOutput.isPresent() || state.isFinal) {
-                final long stateId = ids.get(state);
-                dot.append("  \"" + stateId + "\" [label=\"" + stateId);
-                if (stateOutput.isPresent()) {
+            if (state.output.isPresent() || state.isFinal) {
+                out.append("  \"").append(Integer.toString(state.id)).append("\" [label=\"")
+                        .append(Integer.toString(state.id));
+                if (state.output.isPresent()) {
                     // draw state output as node label
-                    dot.append("/" + outputToString(stateOutput));
+                    out.append('/').append(escape(outputToString(state.output)));
                 }
-                dot.append("\"");
+                out.append('"');
                 if (state.isFinal) {
-                    dot.append(" peripheries=2");
+                    out.append(" peripheries=2");
                 }
-                dot.append("];\n");
+                out.append("];\n");
             }
 
             // draw edges
-            for (Transition<T> transition : state.transitions) {
-                final State<T> next = transition.nextState;
-                final byte[] label = { transition.label };
-                final Optional<T> output = transition.output;
-                final long currentStateId = ids.get(state);
-                final long nextStateId = ids.get(next);
-                if (output.isEmpty()) {
-                    dot.append("  \"" + currentStateId + "\" -> \"" + nextStateId + "\" [label=\"" + new String(label)
-                            + "\"];\n");
-                } else {
-                    dot.append("  \"" + currentStateId + "\" -> \"" + nextStateId + "\" [label=\"" + new String(label)
-                            + "/" + outputToString(output) + "\"];\n");
+            for (int i = 0; i < state.numTransitions(); i++) {
+                final Optional<T> output = state.transitionOutput(i);
+                out.append("  \"").append(Integer.toString(state.id)).append("\" -> \"")
+                        .append(Integer.toString(((FrozenState<T>) state.nextState(i)).id)).append("\" [label=\"")
+                        .append(escape(new String(new byte[] { state.label(i) })));
+                if (output.isPresent()) {
+                    out.append('/').append(escape(outputToString(output)));
                 }
+                out.append("\"];\n");
             }
         }
-        dot.append("}");
-        dot.trimToSize();
-        return dot.toString();
+        out.append("}");
+    }
+
+    /**
+     * Writes the graph in the DOT language to {@code out} in UTF-8. The
+     * channel is not closed.
+     */
+    public void writeDot(WritableByteChannel out) throws IOException {
+        final Writer writer = new BufferedWriter(Channels.newWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        writeDot(writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes one line per transition to {@code out}, with the source state id,
+     * the target state id, the unsigned label and the output separated by
+     * tabs. A final state is marked by a line prefixed with {@code #final}
+     * with its id and output, before the lines of its transitions. The
+     * initial state is on the first line, prefixed with {@code #initial}. The
+     * states are written in a single pass in id order.
+     */
+    public void writeEdgeList(Appendable out) throws IOException {
+        out.append("#initial\t").append(Integer.toString(initialState.id)).append('\n');
+        for (FrozenState<T> state : states) {
+            if (state.isFinal) {
+                out.append("#final\t").append(Integer.toString(state.id)).append('\t')
+                        .append(outputToString(state.output)).append('\n');
+            }
+            for (int i = 0; i < state.numTransitions(); i++) {
+                out.append(Integer.toString(state.id)).append('\t')
+                        .append(Integer.toString(((FrozenState<T>) state.nextState(i)).id)).append('\t')
+                        .append(Integer.toString(state.label(i) & 0xFF)).append('\t')
+                        .append(outputToString(state.transitionOutput(i))).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes the edge list to {@code out} in UTF-8. The channel is not closed.
+     */
+    public void writeEdgeList(WritableByteChannel out) throws IOException {
+        final Writer writer = new BufferedWriter(Channels.newWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        writeEdgeList(writer);
+        writer.flush();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
     }
 
     private String outputToString(Optional<T> output) {
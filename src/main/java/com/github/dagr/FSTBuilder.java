@@ -1,35 +1,248 @@
 package com.github.dagr;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 public abstract class FSTBuilder<T> {
+    private int registryCapacity = 0;
+    private BuildListener buildListener = BuildListener.NO_OP;
+
+    /**
+     * Bounds the number of states remembered for minimization, so that the
+     * memory used while building is fixed at the cost of a slightly larger
+     * automaton. 0 means unbounded, which is the default.
+     */
+    public void setRegistryCapacity(int registryCapacity) {
+        assert registryCapacity >= 0;
+        this.registryCapacity = registryCapacity;
+    }
+
+    /**
+     * Sets the listener notified of the progress and the statistics of builds.
+     */
+    public void setBuildListener(BuildListener buildListener) {
+        this.buildListener = buildListener;
+    }
+
     public FST<T> build(Stream<Map.Entry<byte[], T>> entries) {
-        final var statesDict = new StatesDict<T>();
+        final var stats = newStats();
+        final FST<T> fst = build(entries, stats, buildListener);
+        buildListener.onBuildFinished(stats.finish());
+        return fst;
+    }
+
+    private FST<T> build(Stream<Map.Entry<byte[], T>> entries, BuildStats stats, BuildListener listener) {
+        final var statesDict = new HeapStatesDict<T>(registryCapacity);
+        final FrozenState<T> initialState = minimize(entries, new Registrar(statesDict, stats), listener);
+        return new FST<T>(statesDict, initialState, this);
+    }
+
+    /**
+     * Builds an FST without keeping it on the heap. Every state is written to
+     * {@code out} as soon as it is minimized, so only the registry and the
+     * states along the current key stay in memory; with
+     * {@link #setRegistryCapacity(int)} the registry is bounded as well. The
+     * written FST can be read by {@link FST#read(ReadableByteChannel, FSTBuilder)}.
+     *
+     * @return the number of written states
+     */
+    public int build(Stream<Map.Entry<byte[], T>> entries, WritableByteChannel out) throws IOException {
+        final var statesDict = new StreamingStatesDict<T>(this, out, registryCapacity);
+        final var stats = newStats();
+        try {
+            final FrozenState<T> initialState = minimize(entries, new Registrar(statesDict, stats), buildListener);
+            statesDict.finish(initialState);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        buildListener.onBuildFinished(stats.finish());
+        return statesDict.numStates();
+    }
+
+    /**
+     * Builds an FST from sorted {@code entries} on {@code pool}. The entries are
+     * split into shards at changes of the leading byte and each shard is built
+     * separately. The states of the shards are then registered again bottom up
+     * in a shared registry, so that equal suffixes across shards are merged,
+     * and the transitions from the initial states of the shards are joined
+     * under a common initial state.
+     */
+    public FST<T> build(List<Map.Entry<byte[], T>> entries, ForkJoinPool pool) {
+        // a few shards per worker, so that skewed shards are balanced
+        final int numShards = Math.min(pool.getParallelism() * 4, 256);
+        final int shardSize = Math.max((entries.size() + numShards - 1) / numShards, 1);
+
+        final var stats = newStats();
+        final List<ForkJoinTask<Map.Entry<FST<T>, BuildStats>>> tasks = new ArrayList<>();
+        int start = 0;
+        while (start < entries.size()) {
+            int end = Math.min(start + shardSize, entries.size());
+            // keys with the same leading byte must be in the same shard
+            while (end < entries.size()
+                    && leadingByte(entries.get(end).getKey()) == leadingByte(entries.get(end - 1).getKey())) {
+                end++;
+            }
+            final List<Map.Entry<byte[], T>> shard = entries.subList(start, end);
+            tasks.add(pool.submit(() -> {
+                final var shardStats = new BuildStats(stats.isTimed);
+                final FST<T> fst = build(shard.stream(), shardStats, BuildListener.NO_OP);
+                shardStats.finish();
+                return Map.entry(fst, shardStats);
+            }));
+            start = end;
+        }
+
+        final var statesDict = new HeapStatesDict<T>(registryCapacity);
+        // shards intern their outputs separately, so intern them again into one pool
+        final var registrar = new Registrar(statesDict, stats);
+        final var initialState = new MutableState<T>();
+        final var scratch = new MutableState<T>();
+        for (ForkJoinTask<Map.Entry<FST<T>, BuildStats>> task : tasks) {
+            final FST<T> shard = task.join().getKey();
+            stats.addShard(task.join().getValue());
+            // states are ordered by id, so next states are registered before the states referring to them
+            final List<FrozenState<T>> registered = new ArrayList<>(shard.states.size());
+            for (FrozenState<T> state : shard.states) {
+                if (state == shard.initialState) {
+                    // keep ids aligned; the initial state is joined below instead
+                    registered.add(state);
+                    continue;
+                }
+                scratch.clear();
+                copyTransitions(state, registered, scratch);
+                registered.add(registrar.register(scratch));
+            }
+            copyTransitions(shard.initialState, registered, initialState);
+        }
+        final FST<T> fst = new FST<T>(statesDict, registrar.register(initialState), this);
+        buildListener.onBuildFinished(stats.finish());
+        return fst;
+    }
+
+    // phase times are only measured for a listener to report them to
+    private BuildStats newStats() {
+        return new BuildStats(buildListener != BuildListener.NO_OP);
+    }
+
+    private static int leadingByte(byte[] key) {
+        return key.length == 0 ? -1 : key[0] & 0xFF;
+    }
+
+    // appends the transitions of state to target, replacing next states with registered ones
+    private static <T> void copyTransitions(FrozenState<T> state, List<FrozenState<T>> registered,
+            MutableState<T> target) {
+        if (state.isFinal) {
+            target.isFinal = true;
+            target.setStateOutput(state.output);
+        }
+        for (int i = 0; i < state.numTransitions(); i++) {
+            final byte label = state.label(i);
+            target.setTransition(label, registered.get(((FrozenState<T>) state.nextState(i)).id));
+            target.setTransitionOutput(label, state.transitionOutput(i));
+        }
+    }
+
+    /**
+     * Registers states in a registry, interning their outputs first and
+     * counting them in the statistics.
+     */
+    private class Registrar {
+        final StatesDict<T> statesDict;
+        final UnaryOperator<Optional<T>> interner = newInterner();
+        final BuildStats stats;
+
+        Registrar(StatesDict<T> statesDict, BuildStats stats) {
+            this.statesDict = statesDict;
+            this.stats = stats;
+        }
+
+        FrozenState<T> register(MutableState<T> state) {
+            final long startNanos = stats.isTimed ? System.nanoTime() : 0;
+            state.internOutputs(interner);
+            final long misses = statesDict.misses;
+            final FrozenState<T> frozen = statesDict.findMinimized(state);
+            if (stats.isTimed) {
+                stats.registryNanos += System.nanoTime() - startNanos;
+            }
+            if (statesDict.misses == misses) {
+                stats.registryHits++;
+                return frozen;
+            }
+            stats.registryMisses++;
+            stats.numStates++;
+            stats.numTransitions += state.numTransitions();
+            if (state.output.isPresent()) {
+                stats.outputBytes += outputSize(state.output.get());
+            }
+            for (int i = 0; i < state.numTransitions(); i++) {
+                final Optional<T> output = state.transitionOutput(i);
+                if (output.isPresent()) {
+                    stats.outputBytes += outputSize(output.get());
+                }
+            }
+            return frozen;
+        }
+    }
+
+    private FrozenState<T> minimize(Stream<Map.Entry<byte[], T>> entries, Registrar registrar,
+            BuildListener listener) {
+        final BuildStats stats = registrar.stats;
         final List<MutableState<T>> tempStates = new ArrayList<>();
+        tempStates.add(new MutableState<T>());
 
-        var lastEntry = entries.reduce(Map.entry(new byte[0], defaultValue()), (prev, current) -> {
+        final Map.Entry<byte[], T> identity = Map.entry(new byte[0], defaultValue());
+        var lastEntry = entries.reduce(identity, (prev, current) -> {
             final byte[] prevWord = prev.getKey();
             final byte[] currentWord = current.getKey();
             final T currentOutput = current.getValue();
 
-            assert !prevWord.equals(currentWord) : "Multiple output is not supported"; // Throw Exception
-            assert compare(prevWord, currentWord) < 0 : "Input keys must be sorted"; // Throw Exception
+            if (prev != identity) {
+                final int order = compare(prevWord, currentWord);
+                if (order == 0) {
+                    throw new IllegalArgumentException("Multiple output is not supported; use MultiValueFSTBuilder: "
+                            + new String(currentWord, StandardCharsets.UTF_8));
+                }
+                if (order > 0) {
+                    throw new IllegalArgumentException(
+                            "Input keys must be sorted: " + new String(currentWord, StandardCharsets.UTF_8));
+                }
+            }
+
+            if (++stats.numKeys % BuildListener.PROGRESS_INTERVAL == 0) {
+                listener.onProgress(stats.snapshot());
+            }
+            if (currentWord.length == 0) {
+                // only the first key can be empty, which makes the initial state final
+                tempStates.get(0).isFinal = true;
+                tempStates.get(0).setStateOutput(Optional.of(currentOutput));
+                return current;
+            }
 
             // initialize buffer
             while (tempStates.size() <= currentWord.length) {
                 tempStates.add(new MutableState<T>());
             }
+            stats.peakSpineLength = Math.max(stats.peakSpineLength, currentWord.length + 1);
 
             final int prefixLengthPlus1 = prefixLength(prevWord, currentWord) + 1;
 
             // we minimize the states from the suffix of the previous word
             for (int i = prevWord.length; i >= prefixLengthPlus1; i--) {
                 final MutableState<T> prevState = tempStates.get(i - 1);
-                final FrozenState<T> nextState = statesDict.findMinimized(tempStates.get(i));
+                final FrozenState<T> nextState = registrar.register(tempStates.get(i));
                 prevState.setTransition(prevWord[i - 1], nextState);
             }
             // this loop initializes the states from the suffix of the previous word
@@ -42,9 +255,13 @@ public abstract class FSTBuilder<T> {
             // terminate last state for currentWord
             final var lastState = tempStates.get(currentWord.length);
             lastState.isFinal = true;
-            Optional.empty();
             lastState.setStateOutput(Optional.empty());
+            if (keepsOutputsAtFinalStates()) {
+                lastState.setStateOutput(Optional.of(currentOutput));
+                return current;
+            }
 
+            final long startNanos = stats.isTimed ? System.nanoTime() : 0;
             Optional<T> currentOutputTail = Optional.of(currentOutput);
             for (int i = 1; i < prefixLengthPlus1; i++) {
                 final MutableState<T> prevState = tempStates.get(i - 1);
@@ -56,8 +273,8 @@ public abstract class FSTBuilder<T> {
 
                 prevState.setTransitionOutput(currentWord[i - 1], outputPrefix);
                 // iterate over all transitions from nextState
-                for (Transition<T> transition : nextState.transitions) {
-                    transition.output = concat(outputSuffix, transition.output);
+                for (int t = 0; t < nextState.numTransitions(); t++) {
+                    nextState.setTransitionOutputAt(t, concat(outputSuffix, nextState.transitionOutput(t)));
                 }
                 if (nextState.isFinal) {
                     Optional<T> stateOutput = nextState.getStateOutput();
@@ -68,6 +285,9 @@ public abstract class FSTBuilder<T> {
 
             final var lastPrefixState = tempStates.get(prefixLengthPlus1 - 1);
             lastPrefixState.setTransitionOutput(currentWord[prefixLengthPlus1 - 1], currentOutputTail);
+            if (stats.isTimed) {
+                stats.outputNanos += System.nanoTime() - startNanos;
+            }
 
             // pass currentWord to next iteration
             return current;
@@ -77,12 +297,10 @@ public abstract class FSTBuilder<T> {
         final byte[] currentWord = lastEntry.getKey();
         for (int i = currentWord.length; i > 0; i--) {
             final MutableState<T> prevState = tempStates.get(i - 1);
-            final FrozenState<T> nextState = statesDict.findMinimized(tempStates.get(i));
+            final FrozenState<T> nextState = registrar.register(tempStates.get(i));
             prevState.setTransition(currentWord[i - 1], nextState);
         }
-        final FrozenState<T> initialState = statesDict.findMinimized(tempStates.get(0));
-
-        return new FST<T>(statesDict, initialState);
+        return registrar.register(tempStates.get(0));
     }
 
     static int prefixLength(byte[] b1, byte[] b2) {
@@ -111,9 +329,36 @@ public abstract class FSTBuilder<T> {
 
     abstract T defaultValue();
 
+    /**
+     * Returns true if the output of a key is stored whole at its final state
+     * instead of being pushed toward the initial state. Transitions then carry
+     * no outputs, and keys share suffixes only up to equal outputs.
+     */
+    boolean keepsOutputsAtFinalStates() {
+        return false;
+    }
+
+    /**
+     * Returns a function which maps equal outputs to the same instance. States
+     * are compared by the equality of their outputs, so outputs which do not
+     * implement content equality must be interned for equivalent states to be
+     * merged. A new interner is used for every build.
+     */
+    UnaryOperator<Optional<T>> newInterner() {
+        return UnaryOperator.identity();
+    }
+
     abstract Optional<T> prefix(Optional<T> a, Optional<T> b);
 
     abstract Optional<T> concat(Optional<T> a, Optional<T> b);
 
     abstract Optional<T> subtract(Optional<T> a, Optional<T> b);
+
+    // serialization of outputs
+
+    abstract int outputSize(T output);
+
+    abstract void writeOutput(T output, ByteBuffer out);
+
+    abstract T readOutput(ByteBuffer in, int offset);
 }
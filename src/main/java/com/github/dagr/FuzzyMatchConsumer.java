@@ -0,0 +1,14 @@
+package com.github.dagr;
+
+/**
+ * Receives the keys found by a fuzzy search.
+ */
+@FunctionalInterface
+public interface FuzzyMatchConsumer<T> {
+    /**
+     * Called with a matched key {@code key[0, length)}, its edit distance from
+     * the searched key and its output, in sorted order of keys. The key buffer
+     * is reused, so copy it to keep the key.
+     */
+    void accept(byte[] key, int length, int distance, T output);
+}
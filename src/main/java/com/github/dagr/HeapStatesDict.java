@@ -0,0 +1,44 @@
+package com.github.dagr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry which keeps frozen states on the heap. Each frozen state gets an
+ * integer id, its index in {@link #states()}.
+ */
+class HeapStatesDict<T> extends StatesDict<T> {
+    // preserve insertion order for iteration
+    private final List<FrozenState<T>> states = new ArrayList<>();
+
+    /**
+     * Creates a registry which remembers at most about {@code capacity}
+     * states, or all states if {@code capacity} is not positive.
+     */
+    HeapStatesDict(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    int hash(MutableState<T> state) {
+        return state.hashCode();
+    }
+
+    @Override
+    boolean matches(MutableState<T> state, FrozenState<T> candidate) {
+        return state.equals(candidate);
+    }
+
+    @Override
+    FrozenState<T> freeze(MutableState<T> state) {
+        final FrozenState<T> r = state.freeze();
+        r.id = states.size();
+        states.add(r);
+        return r;
+    }
+
+    @Override
+    List<FrozenState<T>> states() {
+        return this.states;
+    }
+}
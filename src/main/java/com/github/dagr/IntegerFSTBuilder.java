@@ -2,7 +2,9 @@ package com.github.dagr;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Optional;
 
@@ -17,7 +19,7 @@ public class IntegerFSTBuilder extends FSTBuilder<Integer> {
         if (a.isEmpty() || b.isEmpty()) {
             return Optional.empty();
         }
-        return a.get() == b.get() ? a : Optional.empty();
+        return a.get().equals(b.get()) ? a : Optional.empty();
     }
 
     @Override
@@ -50,6 +52,21 @@ public class IntegerFSTBuilder extends FSTBuilder<Integer> {
         return a;
     }
 
+    @Override
+    int outputSize(Integer output) {
+        return Integer.BYTES;
+    }
+
+    @Override
+    void writeOutput(Integer output, ByteBuffer out) {
+        out.putInt(output);
+    }
+
+    @Override
+    Integer readOutput(ByteBuffer in, int offset) {
+        return in.getInt(offset);
+    }
+
     public static void main(String[] args) throws Exception {
         final var entries = new BufferedReader(new InputStreamReader(System.in)).lines().map((String line) -> {
             var columns = line.split(",");
@@ -60,6 +77,12 @@ public class IntegerFSTBuilder extends FSTBuilder<Integer> {
 
         final var builder = new IntegerFSTBuilder();
         final var fst = builder.build(entries);
-        System.out.println(fst.toDot());
+        if (args.length > 0) {
+            // compile and save to the given path instead of printing the graph
+            new DoubleArrayCompiler<Integer>().compile(fst).save(Path.of(args[0]));
+        } else {
+            fst.writeDot(System.out);
+            System.out.println();
+        }
     }
 }
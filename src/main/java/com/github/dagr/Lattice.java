@@ -0,0 +1,57 @@
+package com.github.dagr;
+
+import java.util.Arrays;
+
+/**
+ * Matches of dictionary keys in a text, as filled by
+ * {@link FST#lattice(byte[], int, int, Lattice)}.
+ *
+ * A match is a span {@code [start(i), end(i))} of the text and the ordinal of
+ * its key, which can index tables kept alongside the dictionary. The output of
+ * a match is returned by {@link FST#output(long)} for its ordinal. Entries are
+ * kept in primitive arrays, which are reused when the lattice is filled again.
+ */
+public class Lattice {
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private long[] ordinals = new long[16];
+    private int size;
+
+    /**
+     * Returns the number of matches.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int start(int i) {
+        assert i < size;
+        return starts[i];
+    }
+
+    public int end(int i) {
+        assert i < size;
+        return ends[i];
+    }
+
+    public long ordinal(int i) {
+        assert i < size;
+        return ordinals[i];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int start, int end, long ordinal) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            ordinals = Arrays.copyOf(ordinals, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        ordinals[size] = ordinal;
+        size++;
+    }
+}
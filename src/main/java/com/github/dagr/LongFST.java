@@ -0,0 +1,129 @@
+package com.github.dagr;
+
+/**
+ * FST with long outputs, stored in primitive arrays.
+ *
+ * States are numbered in the order they were frozen. The transitions of state
+ * {@code s} are {@code [stateStarts[s], stateStarts[s + 1])}, sorted by
+ * unsigned label. The output of a key is the sum of the outputs along its
+ * path and the final output of its last state.
+ */
+public class LongFST {
+    final int[] stateStarts;
+    final boolean[] finals;
+    final long[] finalOutputs;
+    final byte[] labels;
+    final int[] targets;
+    final long[] outputs;
+    final int initialState;
+
+    LongFST(int[] stateStarts, boolean[] finals, long[] finalOutputs, byte[] labels, int[] targets, long[] outputs,
+            int initialState) {
+        this.stateStarts = stateStarts;
+        this.finals = finals;
+        this.finalOutputs = finalOutputs;
+        this.labels = labels;
+        this.targets = targets;
+        this.outputs = outputs;
+        this.initialState = initialState;
+    }
+
+    public int initialState() {
+        return initialState;
+    }
+
+    public int numStates() {
+        return finals.length;
+    }
+
+    public int numTransitions() {
+        return labels.length;
+    }
+
+    /**
+     * Returns the index of the transition labeled with {@code label} from
+     * {@code state}, or -1 if there is no such transition.
+     */
+    int find(int state, byte label) {
+        final int key = label & 0xFF;
+        int low = stateStarts[state];
+        int high = stateStarts[state + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midKey = labels[mid] & 0xFF;
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(byte[] key) {
+        return contains(key, 0, key.length);
+    }
+
+    public boolean contains(byte[] buf, int off, int len) {
+        int state = initialState;
+        for (int i = off; i < off + len; i++) {
+            final int t = find(state, buf[i]);
+            if (t < 0) {
+                return false;
+            }
+            state = targets[t];
+        }
+        return finals[state];
+    }
+
+    /**
+     * Returns the output of {@code key}, or {@code defaultValue} if {@code key}
+     * is not accepted.
+     */
+    public long getOrDefault(byte[] key, long defaultValue) {
+        return getOrDefault(key, 0, key.length, defaultValue);
+    }
+
+    /**
+     * Returns the output of the key {@code buf[off, off + len)}, or
+     * {@code defaultValue} if the key is not accepted.
+     */
+    public long getOrDefault(byte[] buf, int off, int len, long defaultValue) {
+        int state = initialState;
+        long output = 0;
+        for (int i = off; i < off + len; i++) {
+            final int t = find(state, buf[i]);
+            if (t < 0) {
+                return defaultValue;
+            }
+            output += outputs[t];
+            state = targets[t];
+        }
+        return finals[state] ? output + finalOutputs[state] : defaultValue;
+    }
+
+    /**
+     * Reports every accepted key that is a prefix of {@code buf[off, off + len)}
+     * to {@code consumer} in a single pass.
+     */
+    public void commonPrefixSearch(byte[] buf, int off, int len, LongPrefixMatchConsumer consumer) {
+        int state = initialState;
+        long output = 0;
+        for (int i = off; ; i++) {
+            if (finals[state]) {
+                consumer.accept(i - off, output + finalOutputs[state]);
+            }
+            if (i == off + len) {
+                return;
+            }
+            final int t = find(state, buf[i]);
+            if (t < 0) {
+                return;
+            }
+            output += outputs[t];
+            state = targets[t];
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.github.dagr;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Builds a {@link LongFST} from keys added in sorted order.
+ *
+ * Outputs are combined with min as prefix, + as concatenation and - as
+ * subtraction, the primitive forms of {@link LongOutputs}, so the common part
+ * of the outputs of keys sharing a prefix is pushed toward the initial state
+ * and suffixes can be shared. Output 0 means no output. States are frozen
+ * into primitive arrays as soon as they are minimized, and the builder
+ * allocates only when its arrays grow.
+ */
+public class LongFSTBuilder {
+    private static final int NO_STATE = -1;
+
+    // frozen states; transitions of state s are [stateStarts[s], stateStarts[s + 1])
+    private int numStates;
+    private int[] stateStarts = new int[16];
+    private boolean[] finals = new boolean[16];
+    private long[] finalOutputs = new long[16];
+    private int[] hashes = new int[16];
+
+    private int numTransitions;
+    private byte[] labels = new byte[16];
+    private int[] targets = new int[16];
+    private long[] outputs = new long[16];
+
+    // open addressing table of state ids plus one, 0 for empty buckets
+    private int[] table = new int[16];
+
+    // states along the last added key, which are not minimized yet
+    private PendingState[] pending = { new PendingState() };
+    private byte[] prevKey = new byte[16];
+    private int prevLength;
+    private boolean isEmpty = true;
+
+    public LongFST build(Stream<Map.Entry<byte[], Long>> entries) {
+        entries.forEachOrdered(entry -> add(entry.getKey(), entry.getValue()));
+        return finish();
+    }
+
+    public void add(byte[] key, long output) {
+        add(key, 0, key.length, output);
+    }
+
+    /**
+     * Adds the key {@code buf[off, off + len)}. Keys must be added in unsigned
+     * byte order.
+     */
+    public void add(byte[] buf, int off, int len, long output) {
+        final int prefixLength = prefixLength(buf, off, len);
+        assert isEmpty || compare(buf, off, len) > 0 : "Input keys must be sorted";
+
+        // initialize buffer
+        if (pending.length <= len) {
+            final int oldLength = pending.length;
+            pending = Arrays.copyOf(pending, Math.max(len + 1, oldLength * 2));
+            for (int i = oldLength; i < pending.length; i++) {
+                pending[i] = new PendingState();
+            }
+        }
+
+        // we minimize the states from the suffix of the previous key
+        minimize(prefixLength);
+        // this loop initializes the states from the suffix of the current key
+        for (int i = prefixLength + 1; i <= len; i++) {
+            pending[i].clear();
+            pending[i - 1].add(buf[off + i - 1]);
+        }
+        // terminate last state for the current key
+        pending[len].isFinal = true;
+
+        // push the common part of the outputs toward the initial state
+        for (int i = 1; i <= prefixLength; i++) {
+            final PendingState prevState = pending[i - 1];
+            final PendingState nextState = pending[i];
+            final long prevOutput = prevState.lastOutput();
+            final long common = LongOutputs.prefix(prevOutput, output);
+            final long suffix = LongOutputs.subtract(prevOutput, common);
+            prevState.setLastOutput(common);
+            if (suffix != 0) {
+                nextState.addOutput(suffix);
+            }
+            output = LongOutputs.subtract(output, common);
+        }
+        if (prefixLength < len) {
+            pending[prefixLength].setLastOutput(output);
+        } else {
+            // only the empty key reaches here
+            pending[len].finalOutput = output;
+        }
+
+        // keep the current key for the next iteration
+        if (prevKey.length < len) {
+            prevKey = new byte[Math.max(len, prevKey.length * 2)];
+        }
+        System.arraycopy(buf, off, prevKey, 0, len);
+        prevLength = len;
+        isEmpty = false;
+    }
+
+    /**
+     * Minimizes the remaining states and returns the FST. The builder can be
+     * reused afterwards.
+     */
+    public LongFST finish() {
+        // here we are minimizing the states of the last key
+        minimize(0);
+        final int initialState = freeze(pending[0]);
+        stateStarts[numStates] = numTransitions;
+
+        final var fst = new LongFST(Arrays.copyOf(stateStarts, numStates + 1), Arrays.copyOf(finals, numStates),
+                Arrays.copyOf(finalOutputs, numStates), Arrays.copyOf(labels, numTransitions),
+                Arrays.copyOf(targets, numTransitions), Arrays.copyOf(outputs, numTransitions), initialState);
+        reset();
+        return fst;
+    }
+
+    private void reset() {
+        numStates = 0;
+        numTransitions = 0;
+        Arrays.fill(table, 0);
+        pending[0].clear();
+        prevLength = 0;
+        isEmpty = true;
+    }
+
+    private void minimize(int downTo) {
+        for (int i = prevLength; i > downTo; i--) {
+            pending[i - 1].setLastTarget(freeze(pending[i]));
+        }
+    }
+
+    private int prefixLength(byte[] buf, int off, int len) {
+        final int shorterLength = Math.min(prevLength, len);
+        int i = 0;
+        while (i < shorterLength && prevKey[i] == buf[off + i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private int compare(byte[] buf, int off, int len) {
+        final int i = prefixLength(buf, off, len);
+        if (i < prevLength && i < len) {
+            return (buf[off + i] & 0xFF) - (prevKey[i] & 0xFF);
+        }
+        return len - prevLength;
+    }
+
+    /**
+     * Returns the id of the frozen state equivalent to {@code state}, freezing
+     * it if there is none.
+     */
+    private int freeze(PendingState state) {
+        final int hash = state.hash();
+        final int mask = table.length - 1;
+        int bucket = mix(hash) & mask;
+        while (table[bucket] != 0) {
+            final int id = table[bucket] - 1;
+            if (hashes[id] == hash && state.equalsFrozen(id)) {
+                return id;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+
+        final int id = numStates++;
+        if (numStates + 1 > stateStarts.length) {
+            final int newLength = stateStarts.length * 2;
+            stateStarts = Arrays.copyOf(stateStarts, newLength);
+            finals = Arrays.copyOf(finals, newLength);
+            finalOutputs = Arrays.copyOf(finalOutputs, newLength);
+            hashes = Arrays.copyOf(hashes, newLength);
+        }
+        if (numTransitions + state.size > labels.length) {
+            final int newLength = Math.max(numTransitions + state.size, labels.length * 2);
+            labels = Arrays.copyOf(labels, newLength);
+            targets = Arrays.copyOf(targets, newLength);
+            outputs = Arrays.copyOf(outputs, newLength);
+        }
+        stateStarts[id] = numTransitions;
+        finals[id] = state.isFinal;
+        finalOutputs[id] = state.finalOutput;
+        hashes[id] = hash;
+        System.arraycopy(state.labels, 0, labels, numTransitions, state.size);
+        System.arraycopy(state.targets, 0, targets, numTransitions, state.size);
+        System.arraycopy(state.outputs, 0, outputs, numTransitions, state.size);
+        numTransitions += state.size;
+
+        table[bucket] = id + 1;
+        // keep the load factor at most 1/2
+        if (numStates * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        final int mask = table.length - 1;
+        for (int id = 0; id < numStates; id++) {
+            int bucket = mix(hashes[id]) & mask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = id + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private class PendingState {
+        byte[] labels = new byte[4];
+        int[] targets = new int[4];
+        long[] outputs = new long[4];
+        int size;
+        boolean isFinal;
+        long finalOutput;
+
+        void clear() {
+            size = 0;
+            isFinal = false;
+            finalOutput = 0;
+        }
+
+        void add(byte label) {
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+                outputs = Arrays.copyOf(outputs, size * 2);
+            }
+            labels[size] = label;
+            targets[size] = NO_STATE;
+            outputs[size] = 0;
+            size++;
+        }
+
+        long lastOutput() {
+            return outputs[size - 1];
+        }
+
+        void setLastOutput(long output) {
+            outputs[size - 1] = output;
+        }
+
+        void setLastTarget(int target) {
+            targets[size - 1] = target;
+        }
+
+        void addOutput(long output) {
+            for (int i = 0; i < size; i++) {
+                outputs[i] = LongOutputs.concat(output, outputs[i]);
+            }
+            if (isFinal) {
+                finalOutput = LongOutputs.concat(output, finalOutput);
+            }
+        }
+
+        int hash() {
+            final int PRIME = 31;
+            int result = 1;
+            result = result * PRIME + (isFinal ? 1231 : 1237);
+            result = result * PRIME + Long.hashCode(finalOutput);
+            for (int i = 0; i < size; i++) {
+                result = result * PRIME + labels[i];
+                result = result * PRIME + targets[i];
+                result = result * PRIME + Long.hashCode(outputs[i]);
+            }
+            return result;
+        }
+
+        boolean equalsFrozen(int id) {
+            final int start = stateStarts[id];
+            final int end = id + 1 < numStates ? stateStarts[id + 1] : numTransitions;
+            if (end - start != size || finals[id] != isFinal || finalOutputs[id] != finalOutput) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (LongFSTBuilder.this.labels[start + i] != labels[i]
+                        || LongFSTBuilder.this.targets[start + i] != targets[i]
+                        || LongFSTBuilder.this.outputs[start + i] != outputs[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final var entries = new BufferedReader(new InputStreamReader(System.in)).lines().map((String line) -> {
+            var columns = line.split(",");
+            var key = columns[0].replace("\"", "");
+            var value = Long.parseLong(columns[1].replace("\"", ""));
+            return Map.entry(key.getBytes(StandardCharsets.UTF_8), value);
+        });
+
+        final var builder = new LongFSTBuilder();
+        final var fst = builder.build(entries);
+        System.out.println(fst.numStates() + " states, " + fst.numTransitions() + " transitions");
+    }
+}
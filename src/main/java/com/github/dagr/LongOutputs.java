@@ -0,0 +1,70 @@
+package com.github.dagr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Non-negative long outputs, shared by taking the minimum and added up along
+ * a path. Outputs which grow with keys in sorted order, such as ordinals or
+ * offsets, share the most. 0 is no output, and outputs are serialized as
+ * varints.
+ */
+public class LongOutputs implements Outputs<Long> {
+    private static final Long NO_OUTPUT = 0L;
+
+    @Override
+    public Long noOutput() {
+        return NO_OUTPUT;
+    }
+
+    // primitive forms of the algebra, which LongFSTBuilder uses without boxing
+
+    static long prefix(long a, long b) {
+        return Math.min(a, b);
+    }
+
+    static long concat(long prefix, long suffix) {
+        return prefix + suffix;
+    }
+
+    static long subtract(long output, long prefix) {
+        assert output >= prefix;
+        return output - prefix;
+    }
+
+    @Override
+    public Long prefix(Long a, Long b) {
+        assert a >= 0 && b >= 0;
+        return prefix(a.longValue(), b.longValue());
+    }
+
+    @Override
+    public Long concat(Long prefix, Long suffix) {
+        if (suffix == 0) {
+            return prefix;
+        }
+        if (prefix == 0) {
+            return suffix;
+        }
+        return concat(prefix.longValue(), suffix.longValue());
+    }
+
+    @Override
+    public Long subtract(Long output, Long prefix) {
+        return prefix == 0 ? output : subtract(output.longValue(), prefix.longValue());
+    }
+
+    @Override
+    public int outputSize(Long output) {
+        return Varints.size(output);
+    }
+
+    @Override
+    public void write(Long output, ByteBuffer out) {
+        Varints.put(out, output);
+    }
+
+    @Override
+    public Long read(ByteBuffer in, int offset) {
+        return Varints.get(in, offset);
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.dagr;
+
+/**
+ * Receives the keys found by a common prefix search on a {@link LongFST}.
+ */
+@FunctionalInterface
+public interface LongPrefixMatchConsumer {
+    /**
+     * Called with the length of a matched key and its output, in increasing
+     * order of length.
+     */
+    void accept(int length, long output);
+}
@@ -0,0 +1,47 @@
+package com.github.dagr;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of lookups on an FST, which can be updated by many threads.
+ *
+ * @see FST#withLookupStats(LookupStats)
+ */
+public class LookupStats {
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder depths = new LongAdder();
+
+    void record(int depth, boolean isHit) {
+        lookups.increment();
+        depths.add(depth);
+        if (!isHit) {
+            misses.increment();
+        }
+    }
+
+    public long lookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * Returns the number of lookups of keys which were not accepted.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the average number of transitions followed per lookup.
+     */
+    public double averageDepth() {
+        final long n = lookups.sum();
+        return n == 0 ? 0 : (double) depths.sum() / n;
+    }
+
+    public void reset() {
+        lookups.reset();
+        misses.reset();
+        depths.reset();
+    }
+}
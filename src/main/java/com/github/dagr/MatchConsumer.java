@@ -0,0 +1,14 @@
+package com.github.dagr;
+
+/**
+ * Receives the keys found by a traversal of an FST.
+ */
+@FunctionalInterface
+public interface MatchConsumer<T> {
+    /**
+     * Called with a matched key {@code key[0, length)} and its output, in
+     * sorted order of keys. The key buffer is reused, so copy it to keep the
+     * key.
+     */
+    void accept(byte[] key, int length, T output);
+}
@@ -0,0 +1,50 @@
+package com.github.dagr;
+
+import java.util.Optional;
+
+/**
+ * FST in which a key maps to a list of values, built by
+ * {@link MultiValueFSTBuilder}.
+ */
+public class MultiValueFST<T> {
+    final FST<byte[]> fst;
+    private final FSTBuilder<T> codec;
+
+    MultiValueFST(FST<byte[]> fst, FSTBuilder<T> codec) {
+        this.fst = fst;
+        this.codec = codec;
+    }
+
+    /**
+     * Returns a value list to be filled by {@link #get(byte[], ValueList)}.
+     */
+    public ValueList<T> newValueList() {
+        return new ValueList<T>(codec);
+    }
+
+    /**
+     * Points {@code values} to the values of {@code key}. Returns false and
+     * empties {@code values} if {@code key} is not accepted. The lookup
+     * returns the stored list itself, so it does not allocate.
+     */
+    public boolean get(byte[] key, ValueList<T> values) {
+        return get(key, 0, key.length, values);
+    }
+
+    public boolean get(byte[] buf, int off, int len, ValueList<T> values) {
+        final Optional<byte[]> packed = fst.get(buf, off, len);
+        if (packed.isEmpty()) {
+            values.clear();
+            return false;
+        }
+        values.reset(packed.get());
+        return true;
+    }
+
+    /**
+     * Returns the underlying FST, whose outputs are the packed lists.
+     */
+    public FST<byte[]> fst() {
+        return fst;
+    }
+}
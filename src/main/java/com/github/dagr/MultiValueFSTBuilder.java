@@ -0,0 +1,92 @@
+package com.github.dagr;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Builds a {@link MultiValueFST} from sorted entries in which a key may occur
+ * several times.
+ *
+ * The values of a key are packed into one byte array, a varint count followed
+ * by the values encoded by {@code codec}, in the order they were read. The
+ * packed list is stored as the output of the final state of the key and is
+ * never split along the path, so looking up a key returns the stored array
+ * without concatenating. Equal lists are interned, so keys with the same values
+ * share their final states.
+ */
+public class MultiValueFSTBuilder<T> {
+    private final FSTBuilder<T> codec;
+    private final ValueListAlgebra algebra = new ValueListAlgebra();
+
+    public MultiValueFSTBuilder(FSTBuilder<T> codec) {
+        this.codec = codec;
+    }
+
+    public void setRegistryCapacity(int registryCapacity) {
+        algebra.setRegistryCapacity(registryCapacity);
+    }
+
+    public MultiValueFST<T> build(Stream<Map.Entry<byte[], T>> entries) {
+        final Iterator<Map.Entry<byte[], T>> iterator = entries.iterator();
+        final Iterator<Map.Entry<byte[], byte[]>> packed = new Iterator<>() {
+            private Map.Entry<byte[], T> next = iterator.hasNext() ? iterator.next() : null;
+            private final List<T> values = new ArrayList<>();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final byte[] key = next.getKey();
+                values.clear();
+                // collect the values of consecutive equal keys
+                while (next != null && Arrays.equals(next.getKey(), key)) {
+                    values.add(next.getValue());
+                    next = iterator.hasNext() ? iterator.next() : null;
+                }
+                return Map.entry(key, pack(values));
+            }
+        };
+        final FST<byte[]> fst = algebra.build(StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(packed, Spliterator.ORDERED | Spliterator.NONNULL), false));
+        return new MultiValueFST<T>(fst, codec);
+    }
+
+    private byte[] pack(List<T> values) {
+        int size = 5;
+        for (T value : values) {
+            size += codec.outputSize(value);
+        }
+        final ByteBuffer out = ByteBuffer.allocate(size);
+        Varints.put(out, values.size());
+        for (T value : values) {
+            codec.writeOutput(value, out);
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Algebra of packed lists, which keeps every list whole at the final
+     * state of its key.
+     */
+    private static class ValueListAlgebra extends BytesFSTBuilder {
+        @Override
+        boolean keepsOutputsAtFinalStates() {
+            return true;
+        }
+    }
+}
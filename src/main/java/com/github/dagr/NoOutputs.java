@@ -0,0 +1,51 @@
+package com.github.dagr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Algebra of an acceptor, whose keys have no outputs. Every accepted key has
+ * the {@link #NO_OUTPUT} output, and nothing is stored on transitions or
+ * states, so the FST is as small as the key set allows.
+ */
+public class NoOutputs implements Outputs<Object> {
+    public static final Object NO_OUTPUT = new Object() {
+        @Override
+        public String toString() {
+            return "NO_OUTPUT";
+        }
+    };
+
+    @Override
+    public Object noOutput() {
+        return NO_OUTPUT;
+    }
+
+    @Override
+    public Object prefix(Object a, Object b) {
+        return NO_OUTPUT;
+    }
+
+    @Override
+    public Object concat(Object prefix, Object suffix) {
+        return NO_OUTPUT;
+    }
+
+    @Override
+    public Object subtract(Object output, Object prefix) {
+        return NO_OUTPUT;
+    }
+
+    @Override
+    public int outputSize(Object output) {
+        return 0;
+    }
+
+    @Override
+    public void write(Object output, ByteBuffer out) {
+    }
+
+    @Override
+    public Object read(ByteBuffer in, int offset) {
+        return NO_OUTPUT;
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.dagr;
+
+import java.nio.ByteBuffer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Algebra of outputs, which defines how the outputs of keys are shared along
+ * the paths of an FST and how they are serialized.
+ *
+ * A key's output is split into parts on the transitions along its path, so
+ * that the parts common to keys sharing a prefix are stored once near the
+ * initial state. Where there is no part to store, the algebra uses the
+ * {@link #noOutput()} sentinel rather than {@code Optional}. Use
+ * {@link OutputsFSTBuilder} to build an FST with an algebra, which maps the
+ * sentinel to the empty outputs held by states.
+ */
+public interface Outputs<T> {
+    /**
+     * Returns the sentinel meaning no output, which is the identity of
+     * {@link #concat(Object, Object)}.
+     */
+    T noOutput();
+
+    /**
+     * Returns true if {@code output} is the same as {@link #noOutput()}.
+     */
+    default boolean isNoOutput(T output) {
+        return noOutput().equals(output);
+    }
+
+    /**
+     * Returns the common part of {@code a} and {@code b}, which is pushed
+     * toward the initial state.
+     */
+    T prefix(T a, T b);
+
+    /**
+     * Returns {@code prefix} followed by {@code suffix}.
+     */
+    T concat(T prefix, T suffix);
+
+    /**
+     * Returns the rest of {@code output} after {@code prefix}, which must be a
+     * prefix of it.
+     */
+    T subtract(T output, T prefix);
+
+    /**
+     * Returns a function which maps equal outputs to the same instance, or
+     * null if {@code equals} of outputs already compares their contents.
+     * States are merged only if their outputs are equal, so outputs such as
+     * arrays must be interned. A new interner is used for every build.
+     */
+    default UnaryOperator<T> newInterner() {
+        return null;
+    }
+
+    /**
+     * Returns the number of bytes written by {@link #write(Object, ByteBuffer)}.
+     */
+    int outputSize(T output);
+
+    /**
+     * Writes {@code output} at the position of {@code out}.
+     */
+    void write(T output, ByteBuffer out);
+
+    /**
+     * Reads an output written at {@code offset} of {@code in}, without moving
+     * its position.
+     */
+    T read(ByteBuffer in, int offset);
+}
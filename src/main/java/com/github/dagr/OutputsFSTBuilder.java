@@ -0,0 +1,101 @@
+package com.github.dagr;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * Builds FSTs whose outputs are defined by an {@link Outputs} algebra, for
+ * example
+ *
+ * <pre>
+ * FST&lt;Long&gt; fst = new OutputsFSTBuilder&lt;&gt;(new LongOutputs()).build(entries);
+ * </pre>
+ *
+ * The algebra works on plain values and its no output sentinel, but states
+ * and transitions still hold their outputs as {@code Optional}: this builder
+ * adapts between the two, storing the sentinel as an empty output so that
+ * states and transitions without outputs hold nothing. {@link LongFSTBuilder}
+ * builds long outputs without boxing or {@code Optional}.
+ */
+public class OutputsFSTBuilder<T> extends FSTBuilder<T> {
+    private final Outputs<T> outputs;
+
+    public OutputsFSTBuilder(Outputs<T> outputs) {
+        this.outputs = outputs;
+    }
+
+    public Outputs<T> outputs() {
+        return outputs;
+    }
+
+    private Optional<T> wrap(T output) {
+        return outputs.isNoOutput(output) ? Optional.empty() : Optional.of(output);
+    }
+
+    private T unwrap(Optional<T> output) {
+        return output.isPresent() ? output.get() : outputs.noOutput();
+    }
+
+    @Override
+    T defaultValue() {
+        return outputs.noOutput();
+    }
+
+    @Override
+    Optional<T> prefix(Optional<T> a, Optional<T> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return Optional.empty();
+        }
+        return wrap(outputs.prefix(a.get(), b.get()));
+    }
+
+    @Override
+    Optional<T> concat(Optional<T> a, Optional<T> b) {
+        if (a.isEmpty()) {
+            return b.isPresent() && outputs.isNoOutput(b.get()) ? Optional.empty() : b;
+        }
+        if (b.isEmpty()) {
+            return outputs.isNoOutput(a.get()) ? Optional.empty() : a;
+        }
+        return wrap(outputs.concat(a.get(), b.get()));
+    }
+
+    @Override
+    Optional<T> subtract(Optional<T> a, Optional<T> b) {
+        if (a.isEmpty()) {
+            return Optional.empty();
+        }
+        return wrap(outputs.subtract(a.get(), unwrap(b)));
+    }
+
+    @Override
+    UnaryOperator<Optional<T>> newInterner() {
+        final UnaryOperator<T> interner = outputs.newInterner();
+        if (interner == null) {
+            return super.newInterner();
+        }
+        // one wrapper per interned output, so that states share the wrappers as well
+        final Map<T, Optional<T>> wrappers = new IdentityHashMap<>();
+        return output -> output.isEmpty() ? output
+                : wrappers.computeIfAbsent(interner.apply(output.get()),
+                        interned -> interned == output.get() ? output : Optional.of(interned));
+    }
+
+    @Override
+    int outputSize(T output) {
+        return outputs.outputSize(output);
+    }
+
+    @Override
+    void writeOutput(T output, ByteBuffer out) {
+        outputs.write(output, out);
+    }
+
+    @Override
+    T readOutput(ByteBuffer in, int offset) {
+        return outputs.read(in, offset);
+    }
+}
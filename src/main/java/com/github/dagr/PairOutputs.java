@@ -0,0 +1,100 @@
+package com.github.dagr;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Outputs of two components, each shared by its own algebra, for example an
+ * ordinal and a weight of a key. A pair is no output if both components are.
+ */
+public class PairOutputs<A, B> implements Outputs<PairOutputs.Pair<A, B>> {
+    /**
+     * Pair of outputs. Pairs are equal if their components are equal, where
+     * arrays are compared by content.
+     */
+    public static final class Pair<A, B> {
+        public final A first;
+        public final B second;
+
+        public Pair(A first, B second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Pair)) {
+                return false;
+            }
+            final Pair<?, ?> other = (Pair<?, ?>) obj;
+            return Objects.deepEquals(first, other.first) && Objects.deepEquals(second, other.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.deepHashCode(new Object[] { first, second });
+        }
+
+        @Override
+        public String toString() {
+            return "(" + first + ", " + second + ")";
+        }
+    }
+
+    private final Outputs<A> firsts;
+    private final Outputs<B> seconds;
+    private final Pair<A, B> noOutput;
+
+    public PairOutputs(Outputs<A> firsts, Outputs<B> seconds) {
+        this.firsts = firsts;
+        this.seconds = seconds;
+        this.noOutput = new Pair<A, B>(firsts.noOutput(), seconds.noOutput());
+    }
+
+    public Pair<A, B> pair(A first, B second) {
+        return firsts.isNoOutput(first) && seconds.isNoOutput(second) ? noOutput : new Pair<A, B>(first, second);
+    }
+
+    @Override
+    public Pair<A, B> noOutput() {
+        return noOutput;
+    }
+
+    @Override
+    public boolean isNoOutput(Pair<A, B> output) {
+        return firsts.isNoOutput(output.first) && seconds.isNoOutput(output.second);
+    }
+
+    @Override
+    public Pair<A, B> prefix(Pair<A, B> a, Pair<A, B> b) {
+        return pair(firsts.prefix(a.first, b.first), seconds.prefix(a.second, b.second));
+    }
+
+    @Override
+    public Pair<A, B> concat(Pair<A, B> prefix, Pair<A, B> suffix) {
+        return pair(firsts.concat(prefix.first, suffix.first), seconds.concat(prefix.second, suffix.second));
+    }
+
+    @Override
+    public Pair<A, B> subtract(Pair<A, B> output, Pair<A, B> prefix) {
+        return pair(firsts.subtract(output.first, prefix.first), seconds.subtract(output.second, prefix.second));
+    }
+
+    @Override
+    public int outputSize(Pair<A, B> output) {
+        return firsts.outputSize(output.first) + seconds.outputSize(output.second);
+    }
+
+    @Override
+    public void write(Pair<A, B> output, ByteBuffer out) {
+        firsts.write(output.first, out);
+        seconds.write(output.second, out);
+    }
+
+    @Override
+    public Pair<A, B> read(ByteBuffer in, int offset) {
+        final A first = firsts.read(in, offset);
+        return pair(first, seconds.read(in, offset + firsts.outputSize(first)));
+    }
+}
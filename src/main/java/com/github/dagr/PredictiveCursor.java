@@ -0,0 +1,155 @@
+package com.github.dagr;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Enumerates the keys starting with a prefix and their outputs in sorted
+ * order.
+ *
+ * The cursor keeps one key buffer and an explicit stack of frames, one per
+ * key position, so enumerating does not allocate per key. The key buffer is
+ * overwritten by {@link #next()}; copy it to keep a key. A cursor can be
+ * reused for another prefix with {@link #reset(byte[], int, int)}.
+ */
+public class PredictiveCursor<T> {
+    private final FST<T> fst;
+
+    private byte[] key = new byte[16];
+    // frames: the state after reading key[0, d), the index of its transition taken last,
+    // and the output summed up to the state
+    private State<T>[] states = newStates(16);
+    private int[] indexes = new int[16];
+    private Optional<T>[] outputs = newOutputs(16);
+    private int prefixLength;
+    private int depth;
+    private boolean isStarted;
+    private boolean isExhausted;
+    private T output;
+
+    PredictiveCursor(FST<T> fst) {
+        this.fst = fst;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> State<T>[] newStates(int length) {
+        return (State<T>[]) new State[length];
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> Optional<T>[] newOutputs(int length) {
+        return (Optional<T>[]) new Optional[length];
+    }
+
+    /**
+     * Positions the cursor before the first key starting with
+     * {@code buf[off, off + len)}.
+     */
+    public void reset(byte[] buf, int off, int len) {
+        ensureDepth(len);
+        State<T> state = fst.initialState;
+        Optional<T> sum = Optional.empty();
+        isExhausted = false;
+        for (int i = 0; i < len; i++) {
+            final int t = state.find(buf[off + i]);
+            if (t < 0) {
+                isExhausted = true;
+                break;
+            }
+            final Optional<T> transitionOutput = state.transitionOutput(t);
+            if (transitionOutput.isPresent()) {
+                sum = fst.algebra.concat(sum, transitionOutput);
+            }
+            state = state.nextState(t);
+        }
+        System.arraycopy(buf, off, key, 0, len);
+        prefixLength = len;
+        depth = len;
+        states[depth] = state;
+        indexes[depth] = -1;
+        outputs[depth] = sum;
+        isStarted = false;
+        output = null;
+    }
+
+    public void reset(byte[] prefix) {
+        reset(prefix, 0, prefix.length);
+    }
+
+    /**
+     * Advances to the next key. Returns false if there are no more keys.
+     */
+    public boolean next() {
+        if (isExhausted) {
+            return false;
+        }
+        if (!isStarted) {
+            isStarted = true;
+            if (states[depth].isFinal) {
+                emit();
+                return true;
+            }
+        }
+        while (true) {
+            final State<T> state = states[depth];
+            final int i = ++indexes[depth];
+            if (i < state.numTransitions()) {
+                ensureDepth(depth + 1);
+                key[depth] = state.label(i);
+                final Optional<T> transitionOutput = state.transitionOutput(i);
+                final Optional<T> sum = transitionOutput.isPresent()
+                        ? fst.algebra.concat(outputs[depth], transitionOutput)
+                        : outputs[depth];
+                depth++;
+                states[depth] = state.nextState(i);
+                indexes[depth] = -1;
+                outputs[depth] = sum;
+                if (states[depth].isFinal) {
+                    emit();
+                    return true;
+                }
+            } else if (depth == prefixLength) {
+                isExhausted = true;
+                output = null;
+                return false;
+            } else {
+                depth--;
+            }
+        }
+    }
+
+    private void emit() {
+        final State<T> state = states[depth];
+        final Optional<T> sum = state.output.isPresent() ? fst.algebra.concat(outputs[depth], state.output)
+                : outputs[depth];
+        output = sum.isPresent() ? sum.get() : fst.defaultOutput.get();
+    }
+
+    private void ensureDepth(int d) {
+        if (d >= states.length) {
+            final int length = Math.max(d + 1, states.length * 2);
+            key = Arrays.copyOf(key, length);
+            states = Arrays.copyOf(states, length);
+            indexes = Arrays.copyOf(indexes, length);
+            outputs = Arrays.copyOf(outputs, length);
+        }
+    }
+
+    /**
+     * Returns the buffer holding the current key in {@code [0, keyLength())}.
+     */
+    public byte[] key() {
+        return key;
+    }
+
+    public int keyLength() {
+        return depth;
+    }
+
+    /**
+     * Returns the output of the current key.
+     */
+    public T output() {
+        return output;
+    }
+}
@@ -1,21 +1,58 @@
 package com.github.dagr;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 
 public abstract class State<T> {
-    public boolean isFinal;
-    public List<Transition<T>> transitions;
-    public Optional<T> output;
+    boolean isFinal;
+    Optional<T> output;
+
+    /**
+     * Returns true if the keys ending at this state are accepted.
+     */
+    public boolean isFinal() {
+        return isFinal;
+    }
+
+    /**
+     * Returns the number of outgoing transitions.
+     */
+    public abstract int numTransitions();
+
+    /**
+     * Returns the label of the {@code i}-th transition.
+     */
+    public abstract byte label(int i);
+
+    /**
+     * Returns the next state of the {@code i}-th transition.
+     */
+    public abstract State<T> nextState(int i);
+
+    /**
+     * Returns the output of the {@code i}-th transition.
+     */
+    public abstract Optional<T> transitionOutput(int i);
 
     public Optional<State<T>> transit(byte label) {
-        for (Transition<T> transition : transitions) {
-            if (label == transition.label) {
-                return Optional.ofNullable(transition.nextState);
+        final int i = find(label);
+        return i < 0 ? Optional.empty() : Optional.ofNullable(nextState(i));
+    }
+
+    /**
+     * Returns the index of the transition labeled with {@code label}, or -1 if
+     * there is no such transition.
+     */
+    int find(byte label) {
+        for (int i = 0; i < numTransitions(); i++) {
+            if (label == label(i)) {
+                return i;
             }
         }
-        return Optional.empty();
+        return -1;
     }
 
     public Optional<T> getStateOutput() {
@@ -23,12 +60,8 @@ public abstract class State<T> {
     }
 
     public Optional<T> transitOutput(byte label) {
-        for (Transition<T> transition : transitions) {
-            if (label == transition.label) {
-                return transition.output;
-            }
-        }
-        return Optional.empty();
+        final int i = find(label);
+        return i < 0 ? Optional.empty() : transitionOutput(i);
     }
 
     @Override
@@ -40,23 +73,23 @@ public abstract class State<T> {
             @SuppressWarnings("unchecked")
             final State<T> other = (State<T>) obj;
 
-            if (this.transitions.size() != other.transitions.size()) {
+            if (this.numTransitions() != other.numTransitions()) {
                 return false;
             }
-            for (Transition<T> transition : this.transitions) {
-                Optional<T> output = other.transitOutput(transition.label);
-                if (!output.equals(transition.output)) {
+            for (int i = 0; i < this.numTransitions(); i++) {
+                // transitions are usually in the same order, so try the same position first
+                final int j = other.label(i) == this.label(i) ? i : other.find(this.label(i));
+                if (j < 0) {
                     return false;
                 }
-                Optional<State<T>> next = other.transit(transition.label);
-                if (next.isEmpty()) {
+                if (!other.transitionOutput(j).equals(this.transitionOutput(i))) {
                     return false;
                 }
                 // we check these 2 next states are the same Java object
-                State<T> nextState = next.get();
+                State<T> nextState = other.nextState(j);
                 assert other instanceof FrozenState ? nextState instanceof FrozenState : true;
-                assert this instanceof FrozenState ? transition.nextState instanceof FrozenState : true;
-                if (nextState != transition.nextState) {
+                assert this instanceof FrozenState ? this.nextState(i) instanceof FrozenState : true;
+                if (nextState != this.nextState(i)) {
                     return false;
                 }
             }
@@ -78,59 +111,218 @@ public abstract class State<T> {
         int result = 1;
         result = result * PRIME + (this.isFinal ? 1231 : 1237);
         result = result * PRIME + this.output.hashCode();
-        for (Transition<T> transition : this.transitions) {
-            result = result * PRIME + transition.label;
-            result = result * PRIME + transition.nextState.hashCode();
-            result = result * PRIME + transition.output.hashCode();
+        for (int i = 0; i < this.numTransitions(); i++) {
+            result = result * PRIME + this.label(i);
+            // next states are frozen and return their cached hash codes
+            result = result * PRIME + this.nextState(i).hashCode();
+            result = result * PRIME + this.transitionOutput(i).hashCode();
         }
         return result;
     }
 }
 
+/**
+ * State in a built FST. Transitions are kept in unsigned label order, so a
+ * label is found by binary search, or by the rank in a bitmap of labels if the
+ * state has many transitions. A frozen state is never modified after
+ * construction, so an FST can be shared by threads without locking.
+ */
 class FrozenState<T> extends State<T> {
+    // states with at least this many transitions find labels by a bitmap
+    static final int DENSE_THRESHOLD = 16;
+
+    final List<Transition<T>> transitions;
+    // index in the registry, or -1 if not registered
+    int id = -1;
+    private final int hash;
+    private final byte[] labels;
+    // 256-bit set of labels of a dense state, or null
+    private final long[] bitmap;
+
     // TODO make FrozenTransition class, and use it here
     FrozenState(boolean isFinal, List<Transition<T>> transitions, Optional<T> output) {
         // assert that all next states from FrozenState are instances of FrozenState
         assert transitions.stream().allMatch(t -> t.nextState instanceof FrozenState);
         this.isFinal = isFinal;
-        this.transitions = transitions;
+        this.transitions = List.copyOf(sortByLabel(transitions));
         this.output = output;
+
+        final int size = this.transitions.size();
+        this.labels = new byte[size];
+        for (int i = 0; i < size; i++) {
+            labels[i] = this.transitions.get(i).label;
+        }
+        if (size >= DENSE_THRESHOLD) {
+            bitmap = new long[4];
+            for (byte label : labels) {
+                bitmap[(label & 0xFF) >>> 6] |= 1L << label;
+            }
+        } else {
+            bitmap = null;
+        }
+        this.hash = super.hashCode();
+    }
+
+    /**
+     * Returns {@code transitions} if they are in unsigned label order, or a
+     * sorted copy otherwise. Builders add labels in order, so copying is rare.
+     */
+    private static <T> List<Transition<T>> sortByLabel(List<Transition<T>> transitions) {
+        for (int i = 1; i < transitions.size(); i++) {
+            if (Byte.toUnsignedInt(transitions.get(i - 1).label) >= Byte.toUnsignedInt(transitions.get(i).label)) {
+                final List<Transition<T>> sorted = new ArrayList<>(transitions);
+                sorted.sort((a, b) -> Byte.toUnsignedInt(a.label) - Byte.toUnsignedInt(b.label));
+                return sorted;
+            }
+        }
+        return transitions;
+    }
+
+    @Override
+    int find(byte label) {
+        final int key = label & 0xFF;
+        if (bitmap != null) {
+            final int word = key >>> 6;
+            final long bit = 1L << key;
+            if ((bitmap[word] & bit) == 0) {
+                return -1;
+            }
+            int rank = Long.bitCount(bitmap[word] & (bit - 1));
+            for (int i = 0; i < word; i++) {
+                rank += Long.bitCount(bitmap[i]);
+            }
+            return rank;
+        }
+        int low = 0;
+        int high = labels.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midKey = labels[mid] & 0xFF;
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public int numTransitions() {
+        return transitions.size();
+    }
+
+    @Override
+    public byte label(int i) {
+        return labels[i];
+    }
+
+    @Override
+    public State<T> nextState(int i) {
+        return transitions.get(i).nextState;
+    }
+
+    @Override
+    public Optional<T> transitionOutput(int i) {
+        return transitions.get(i).output;
     }
 }
 
+/**
+ * State on the path of the last added key. The builder reuses its arrays for
+ * every key, so building allocates only for frozen states.
+ */
 class MutableState<T> extends State<T> {
+    private byte[] labels;
+    private State<T>[] nextStates;
+    private Optional<T>[] outputs;
+    private int size;
+
     MutableState() {
-        this.isFinal = false;
-        this.transitions = new ArrayList<Transition<T>>(0);
-        this.output = Optional.empty();
+        this.labels = new byte[4];
+        this.nextStates = newStates(4);
+        this.outputs = newOutputs(4);
+        clear();
     }
 
-    MutableState(boolean isFinal, List<Transition<T>> transitions, Optional<T> output) {
-        this.isFinal = isFinal;
-        this.transitions = transitions;
-        this.output = output;
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> State<T>[] newStates(int length) {
+        return (State<T>[]) new State[length];
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> Optional<T>[] newOutputs(int length) {
+        return (Optional<T>[]) new Optional[length];
+    }
+
+    @Override
+    public int numTransitions() {
+        return size;
+    }
+
+    @Override
+    public byte label(int i) {
+        return labels[i];
+    }
+
+    @Override
+    public State<T> nextState(int i) {
+        return nextStates[i];
+    }
+
+    @Override
+    public Optional<T> transitionOutput(int i) {
+        return outputs[i];
+    }
+
+    @Override
+    int find(byte label) {
+        // the builder always works on the last transition, so scan backward
+        for (int i = size - 1; i >= 0; i--) {
+            if (label == labels[i]) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     void clear() {
         this.isFinal = false;
-        this.transitions = new ArrayList<Transition<T>>(0);
+        this.size = 0;
         this.output = Optional.empty();
     }
 
     FrozenState<T> freeze() {
-        return new FrozenState<T>(this.isFinal, new ArrayList<Transition<T>>(this.transitions), this.output);
+        final List<Transition<T>> transitions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            transitions.add(new Transition<T>(labels[i], nextStates[i], outputs[i]));
+        }
+        return new FrozenState<T>(this.isFinal, transitions, this.output);
     }
 
     void setTransition(byte label, State<T> nextState) {
-        for (int i = 0; i < this.transitions.size(); i++) {
-            Transition<T> existingTransition = this.transitions.get(i);
-            if (existingTransition.label == label) {
-                // if the same label transition exists, replace it
-                this.transitions.set(i, new Transition<T>(label, nextState, existingTransition.output));
-                return;
-            }
+        final int i = find(label);
+        if (i >= 0) {
+            // if the same label transition exists, replace it
+            nextStates[i] = nextState;
+            return;
+        }
+        if (size == labels.length) {
+            labels = Arrays.copyOf(labels, size * 2);
+            nextStates = Arrays.copyOf(nextStates, size * 2);
+            outputs = Arrays.copyOf(outputs, size * 2);
         }
-        this.transitions.add(new Transition<T>(label, nextState, Optional.empty()));
+        labels[size] = label;
+        nextStates[size] = nextState;
+        outputs[size] = Optional.empty();
+        size++;
     }
 
     void setStateOutput(Optional<T> output) {
@@ -139,11 +331,24 @@ class MutableState<T> extends State<T> {
     }
 
     void setTransitionOutput(byte label, Optional<T> output) {
-        for (Transition<T> transition : transitions) {
-            if (label == transition.label) {
-                transition.output = output;
-                return;
-            }
+        final int i = find(label);
+        if (i >= 0) {
+            outputs[i] = output;
+        }
+    }
+
+    void setTransitionOutputAt(int i, Optional<T> output) {
+        outputs[i] = output;
+    }
+
+    /**
+     * Replaces the outputs of this state with the instances returned by
+     * {@code interner}, before the state is compared with frozen ones.
+     */
+    void internOutputs(UnaryOperator<Optional<T>> interner) {
+        this.output = interner.apply(this.output);
+        for (int i = 0; i < size; i++) {
+            outputs[i] = interner.apply(outputs[i]);
         }
     }
 }
@@ -1,31 +1,117 @@
 package com.github.dagr;
 
-import java.util.LinkedHashMap;
-import java.util.Optional;
-import java.util.Set;
+import java.util.List;
 
-class StatesDict<T> {
-    // preserve insetion order for iteration
-    final LinkedHashMap<FrozenState<T>, FrozenState<T>> dict = new LinkedHashMap<>();
+/**
+ * Registry of frozen states.
+ *
+ * The table holds frozen states in open addressing, and probes compare cached
+ * hash codes before asking {@link #matches(MutableState, FrozenState)}. A
+ * bounded registry never grows its table; when the probe window is full it
+ * replaces the state in the home bucket, so equivalent states may be frozen
+ * twice and the automaton becomes slightly larger than minimal. Subclasses
+ * decide how a state is identified and where frozen states are kept.
+ */
+abstract class StatesDict<T> {
+    private static final int INITIAL_TABLE_SIZE = 16;
+    // probe window of a bounded registry
+    private static final int MAX_PROBES = 8;
 
-    FrozenState<T> findMinimized(MutableState<T> state) {
-        return member(state).orElseGet(() -> {
-            FrozenState<T> r = state.freeze();
-            insert(r);
-            return r;
-        });
+    private int[] hashes;
+    private FrozenState<T>[] table;
+    private int size;
+    private final boolean isBounded;
+    // number of states frozen, which is counted for build statistics
+    long misses;
+
+    /**
+     * Creates a registry which remembers at most about {@code capacity}
+     * states, or all states if {@code capacity} is not positive.
+     */
+    StatesDict(int capacity) {
+        this.isBounded = capacity > 0;
+        allocateTable(isBounded ? Math.max(Integer.highestOneBit(capacity - 1) << 1, MAX_PROBES)
+                : INITIAL_TABLE_SIZE);
     }
 
-    Optional<FrozenState<T>> member(State<T> state) {
-        return Optional.ofNullable(dict.get(state));
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void allocateTable(int length) {
+        hashes = new int[length];
+        table = (FrozenState<T>[]) new FrozenState[length];
+    }
+
+    /**
+     * Returns the hash code of {@code state}. It is called first for every
+     * state looked up, before the other hooks.
+     */
+    abstract int hash(MutableState<T> state);
+
+    /**
+     * Returns true if {@code candidate} is equivalent to {@code state}.
+     */
+    abstract boolean matches(MutableState<T> state, FrozenState<T> candidate);
+
+    /**
+     * Freezes {@code state}, which has no equivalent state in the registry,
+     * and assigns its id.
+     */
+    abstract FrozenState<T> freeze(MutableState<T> state);
+
+    /**
+     * Returns frozen states in the order they were frozen, indexed by id.
+     */
+    abstract List<FrozenState<T>> states();
+
+    FrozenState<T> findMinimized(MutableState<T> state) {
+        final int hash = hash(state);
+        final int mask = table.length - 1;
+        final int home = mix(hash) & mask;
+        int bucket = home;
+        for (int probe = 0; table[bucket] != null; probe++) {
+            if (hashes[bucket] == hash && matches(state, table[bucket])) {
+                return table[bucket];
+            }
+            if (isBounded && probe == MAX_PROBES - 1) {
+                // evict instead of probing further
+                bucket = home;
+                size--;
+                break;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+
+        misses++;
+        final FrozenState<T> r = freeze(state);
+        hashes[bucket] = hash;
+        table[bucket] = r;
+        size++;
+        // keep the load factor at most 1/2
+        if (!isBounded && size * 2 > table.length) {
+            rehash();
+        }
+        return r;
     }
 
-    void insert(FrozenState<T> state) {
-        // state object acts as key and value
-        this.dict.put(state, state);
+    private void rehash() {
+        final int[] oldHashes = hashes;
+        final FrozenState<T>[] oldTable = table;
+        allocateTable(oldTable.length * 2);
+        final int mask = table.length - 1;
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] == null) {
+                continue;
+            }
+            int bucket = mix(oldHashes[i]) & mask;
+            while (table[bucket] != null) {
+                bucket = (bucket + 1) & mask;
+            }
+            hashes[bucket] = oldHashes[i];
+            table[bucket] = oldTable[i];
+        }
     }
 
-    Set<FrozenState<T>> states() {
-        return this.dict.keySet();
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
     }
 }
@@ -0,0 +1,247 @@
+package com.github.dagr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Registry which writes every newly frozen state to a channel instead of
+ * keeping it on the heap.
+ *
+ * A state is identified by its encoding, in which next states are referred to
+ * by id. The registry keeps only the encodings and returns handles, which are
+ * frozen states without transitions carrying the id of the written state.
+ * States are written in the order they are frozen, so next states always
+ * precede the states referring to them. The stream is laid out as follows.
+ *
+ * <pre>
+ * int     magic
+ * int     version
+ * records of varint length and state encoding, terminated by length 0
+ * varint  id of the initial state
+ * varint  number of states
+ * </pre>
+ *
+ * A state is encoded as a flag byte (1 for final, 2 for having a state
+ * output), a varint number of transitions, the state output, then the label,
+ * a varint of the next state id shifted left by one with the lowest bit set
+ * if an output follows, and the output of each transition. Outputs are
+ * encoded by the output algebra.
+ */
+class StreamingStatesDict<T> extends StatesDict<T> {
+    static final int MAGIC = 0x43444653; // "CDFS"
+    static final int VERSION = 2;
+
+    private static final int FINAL = 1;
+    private static final int HAS_OUTPUT = 2;
+
+    private final FSTBuilder<T> algebra;
+    private final WritableByteChannel out;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(1 << 16);
+    // encoding of the state being minimized
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private int numStates;
+
+    /**
+     * Frozen state without transitions standing for a written state, which
+     * keeps the encoding the state is identified by.
+     */
+    private static final class Handle<T> extends FrozenState<T> {
+        final byte[] encoding;
+
+        Handle(boolean isFinal, byte[] encoding) {
+            super(isFinal, List.of(), Optional.empty());
+            this.encoding = encoding;
+        }
+    }
+
+    StreamingStatesDict(FSTBuilder<T> algebra, WritableByteChannel out, int capacity) {
+        super(capacity);
+        this.algebra = algebra;
+        this.out = out;
+        writeBuffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    @Override
+    int hash(MutableState<T> state) {
+        encode(state);
+        final byte[] encoding = scratch.array();
+        int hash = 1;
+        for (int i = 0; i < scratch.position(); i++) {
+            hash = hash * 31 + encoding[i];
+        }
+        return hash;
+    }
+
+    @Override
+    boolean matches(MutableState<T> state, FrozenState<T> candidate) {
+        final byte[] encoding = ((Handle<T>) candidate).encoding;
+        return Arrays.equals(encoding, 0, encoding.length, scratch.array(), 0, scratch.position());
+    }
+
+    @Override
+    FrozenState<T> freeze(MutableState<T> state) {
+        final byte[] encoding = Arrays.copyOf(scratch.array(), scratch.position());
+        try {
+            writeRecord(encoding);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final Handle<T> handle = new Handle<T>(state.isFinal, encoding);
+        handle.id = numStates++;
+        return handle;
+    }
+
+    /**
+     * Returns no states, as they are not kept on the heap.
+     */
+    @Override
+    List<FrozenState<T>> states() {
+        return List.of();
+    }
+
+    int numStates() {
+        return numStates;
+    }
+
+    void finish(FrozenState<T> initialState) throws IOException {
+        ensureWritable(1 + 5 + 5);
+        Varints.put(writeBuffer, 0);
+        Varints.put(writeBuffer, initialState.id);
+        Varints.put(writeBuffer, numStates);
+        flush();
+    }
+
+    private void encode(MutableState<T> state) {
+        scratch.clear();
+        ensureScratch(1 + 5);
+        scratch.put((byte) ((state.isFinal ? FINAL : 0) | (state.output.isPresent() ? HAS_OUTPUT : 0)));
+        Varints.put(scratch, state.numTransitions());
+        if (state.output.isPresent()) {
+            encodeOutput(state.output.get());
+        }
+        for (int i = 0; i < state.numTransitions(); i++) {
+            final Optional<T> output = state.transitionOutput(i);
+            ensureScratch(1 + 10);
+            scratch.put(state.label(i));
+            Varints.put(scratch, ((long) ((FrozenState<T>) state.nextState(i)).id << 1) | (output.isPresent() ? 1 : 0));
+            if (output.isPresent()) {
+                encodeOutput(output.get());
+            }
+        }
+    }
+
+    private void encodeOutput(T output) {
+        ensureScratch(algebra.outputSize(output));
+        algebra.writeOutput(output, scratch);
+    }
+
+    private void ensureScratch(int n) {
+        if (scratch.remaining() < n) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + n));
+            scratch.flip();
+            grown.put(scratch);
+            scratch = grown;
+        }
+    }
+
+    private void writeRecord(byte[] encoding) throws IOException {
+        ensureWritable(5);
+        Varints.put(writeBuffer, encoding.length);
+        if (encoding.length > writeBuffer.remaining()) {
+            flush();
+            final ByteBuffer record = ByteBuffer.wrap(encoding);
+            while (record.hasRemaining()) {
+                out.write(record);
+            }
+            return;
+        }
+        writeBuffer.put(encoding);
+    }
+
+    private void ensureWritable(int n) throws IOException {
+        if (writeBuffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            out.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Reads the states written by a streaming build and links them into an
+     * FST.
+     */
+    static <T> FST<T> read(ReadableByteChannel channel, FSTBuilder<T> algebra) throws IOException {
+        final var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a streamed FST");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+
+        final List<FrozenState<T>> states = new ArrayList<>();
+        byte[] record = new byte[256];
+        while (true) {
+            final int length = (int) Varints.read(in);
+            if (length == 0) {
+                break;
+            }
+            if (record.length < length) {
+                record = new byte[Math.max(length, record.length * 2)];
+            }
+            in.readFully(record, 0, length);
+            final FrozenState<T> state = decode(ByteBuffer.wrap(record, 0, length), states, algebra);
+            state.id = states.size();
+            states.add(state);
+        }
+        final int initialState = (int) Varints.read(in);
+        if (Varints.read(in) != states.size() || initialState >= states.size()) {
+            throw new IOException("Corrupted streamed FST");
+        }
+        return new FST<T>(states, states.get(initialState), algebra);
+    }
+
+    private static <T> FrozenState<T> decode(ByteBuffer record, List<FrozenState<T>> states, FSTBuilder<T> algebra)
+            throws IOException {
+        final int flags = record.get();
+        final int numTransitions = (int) Varints.get(record);
+        final Optional<T> output = (flags & HAS_OUTPUT) != 0 ? Optional.of(decodeOutput(record, algebra))
+                : Optional.empty();
+        final List<Transition<T>> transitions = new ArrayList<>(numTransitions);
+        for (int i = 0; i < numTransitions; i++) {
+            final byte label = record.get();
+            final long next = Varints.get(record);
+            final long nextId = next >>> 1;
+            if (nextId >= states.size()) {
+                throw new IOException("Corrupted streamed FST");
+            }
+            final Optional<T> transitionOutput = (next & 1) != 0 ? Optional.of(decodeOutput(record, algebra))
+                    : Optional.empty();
+            transitions.add(new Transition<T>(label, states.get((int) nextId), transitionOutput));
+        }
+        return new FrozenState<T>((flags & FINAL) != 0, transitions, output);
+    }
+
+    private static <T> T decodeOutput(ByteBuffer record, FSTBuilder<T> algebra) {
+        final T output = algebra.readOutput(record, record.position());
+        record.position(record.position() + algebra.outputSize(output));
+        return output;
+    }
+}
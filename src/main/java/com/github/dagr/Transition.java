@@ -6,7 +6,7 @@ import java.util.Optional;
 public class Transition<T> {
     public final byte label;
     public final State<T> nextState;
-    public Optional<T> output;
+    public final Optional<T> output;
 
     Transition(byte label, State<T> nextState, Optional<T> output) {
         this.label = label;
@@ -0,0 +1,393 @@
+package com.github.dagr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Dictionary which accepts updates without rebuilding, layered like an LSM
+ * tree over immutable FSTs.
+ *
+ * Puts and removes go to a small in-memory delta, in which a removal is kept
+ * as a tombstone. When the delta reaches the flush threshold, it is built into
+ * a new segment, which is an FST of its entries and an FST of its tombstones.
+ * The bottom segment may be an existing dictionary, which is then never
+ * rebuilt key by key.
+ *
+ * Segments are merged in tiers. The newest segments are merged when at least
+ * as many as the merge factor have similar sizes, measured in keys, where
+ * an older segment joins a run if it is at most {@link #SIZE_RATIO} times as
+ * large as the newer segments of the run together. A large segment, such as
+ * the base dictionary, is thus merged only after about as much has been
+ * written above it, and each entry is rewritten a logarithmic number of
+ * times. Merges run one at a time on the merge executor by a k-way merge of
+ * sorted enumerations; segments flushed meanwhile stay on top of the merged
+ * one, and the trigger is checked again when a merge finishes. Lookups
+ * consult the delta and then the segments, newest first, and the first entry
+ * or tombstone found decides the result.
+ *
+ * Lookups do not lock and see a consistent set of layers. Updates are
+ * serialized.
+ */
+public class UpdatableDictionary<T> {
+    /**
+     * Ratio of the size of an older segment to the total size of the newer
+     * segments up to which the older one is merged with them.
+     */
+    public static final int SIZE_RATIO = 2;
+
+    private final FSTBuilder<T> builder;
+    private final Executor mergeExecutor;
+    private int flushThreshold = 4096;
+    private int mergeFactor = 8;
+
+    // layers visible to readers, replaced as a whole
+    private volatile Layers<T> layers;
+    private boolean isMerging;
+
+    /**
+     * Creates an empty dictionary which builds segments with {@code builder}
+     * and merges them on {@code mergeExecutor}.
+     */
+    public UpdatableDictionary(FSTBuilder<T> builder, Executor mergeExecutor) {
+        this.builder = builder;
+        this.mergeExecutor = mergeExecutor;
+        this.layers = new Layers<T>(newDelta(), null, List.of());
+    }
+
+    /**
+     * Creates a dictionary of the entries of {@code base} with updates on top.
+     * {@code base} becomes the bottom segment as it is, and {@code builder}
+     * must be of the same kind as the one it was built with.
+     */
+    public UpdatableDictionary(FSTBuilder<T> builder, FST<T> base, Executor mergeExecutor) {
+        this.builder = builder;
+        this.mergeExecutor = mergeExecutor;
+        this.layers = new Layers<T>(newDelta(), null,
+                List.of(new Segment<T>(base, builder.build(Stream.empty()), base.countKeys())));
+    }
+
+    /**
+     * Sets the number of updates held in the delta before it is flushed.
+     */
+    public void setFlushThreshold(int flushThreshold) {
+        assert flushThreshold > 0;
+        this.flushThreshold = flushThreshold;
+    }
+
+    /**
+     * Sets the number of similar-sized segments which triggers a merge.
+     */
+    public void setMergeFactor(int mergeFactor) {
+        assert mergeFactor > 1;
+        this.mergeFactor = mergeFactor;
+    }
+
+    private static <T> NavigableMap<byte[], Optional<T>> newDelta() {
+        return new ConcurrentSkipListMap<>(FSTBuilder::compare);
+    }
+
+    /**
+     * Returns the output of {@code key}, or empty if {@code key} is absent.
+     */
+    public Optional<T> get(byte[] key) {
+        final Layers<T> layers = this.layers;
+        Optional<T> value = layers.delta.get(key);
+        if (value != null) {
+            return value;
+        }
+        if (layers.flushing != null) {
+            value = layers.flushing.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        for (int i = layers.segments.size() - 1; i >= 0; i--) {
+            final Segment<T> segment = layers.segments.get(i);
+            if (segment.tombstones.get(key).isPresent()) {
+                return Optional.empty();
+            }
+            value = segment.entries.get(key);
+            if (value.isPresent()) {
+                return value;
+            }
+        }
+        return Optional.empty();
+    }
+
+    public synchronized void put(byte[] key, T output) {
+        update(key, Optional.of(output));
+    }
+
+    public synchronized void remove(byte[] key) {
+        update(key, Optional.empty());
+    }
+
+    private void update(byte[] key, Optional<T> value) {
+        final NavigableMap<byte[], Optional<T>> delta = layers.delta;
+        delta.put(key.clone(), value);
+        if (delta.size() >= flushThreshold) {
+            flush();
+        }
+    }
+
+    /**
+     * Builds the delta into a new segment, and starts a merge if as many of
+     * the newest segments as the merge factor have similar sizes.
+     */
+    public synchronized void flush() {
+        final NavigableMap<byte[], Optional<T>> delta = layers.delta;
+        if (delta.isEmpty()) {
+            return;
+        }
+        // keep the delta visible while its segment is built
+        layers = new Layers<T>(newDelta(), delta, layers.segments);
+
+        final Segment<T> segment = new Segment<T>(
+                builder.build(delta.entrySet().stream().filter(entry -> entry.getValue().isPresent())
+                        .map(entry -> Map.entry(entry.getKey(), entry.getValue().get()))),
+                builder.build(delta.entrySet().stream().filter(entry -> entry.getValue().isEmpty())
+                        .map(entry -> Map.entry(entry.getKey(), builder.defaultValue()))),
+                delta.size());
+        final List<Segment<T>> segments = new ArrayList<>(layers.segments);
+        segments.add(segment);
+        layers = new Layers<T>(layers.delta, null, Collections.unmodifiableList(segments));
+        maybeMerge();
+    }
+
+    /**
+     * Starts merging the newest run of similar-sized segments unless a merge
+     * is running or the run is shorter than the merge factor. If the executor
+     * rejects the merge, the segments stay as they are until the next flush.
+     */
+    private void maybeMerge() {
+        if (isMerging) {
+            return;
+        }
+        final List<Segment<T>> segments = layers.segments;
+        int start = segments.size() - 1;
+        if (start < 0) {
+            return;
+        }
+        long newerSize = segments.get(start).size;
+        while (start > 0 && segments.get(start - 1).size <= newerSize * SIZE_RATIO) {
+            start--;
+            newerSize += segments.get(start).size;
+        }
+        if (segments.size() - start < mergeFactor) {
+            return;
+        }
+        isMerging = true;
+        final int from = start;
+        final List<Segment<T>> merged = segments.subList(from, segments.size());
+        try {
+            mergeExecutor.execute(() -> mergeSegments(from, merged));
+        } catch (RejectedExecutionException e) {
+            isMerging = false;
+        }
+    }
+
+    /**
+     * Returns true if a merge has been started and has not replaced its
+     * segments yet.
+     */
+    synchronized boolean isMerging() {
+        return isMerging;
+    }
+
+    /**
+     * Returns the number of segments.
+     */
+    public int numSegments() {
+        return layers.segments.size();
+    }
+
+    /**
+     * Returns the segments, oldest first.
+     */
+    List<Segment<T>> segments() {
+        return layers.segments;
+    }
+
+    /**
+     * Merges {@code merged}, the segments from index {@code from}, and replaces
+     * them. Only this merge replaces segments, so they stay at {@code from}.
+     */
+    private void mergeSegments(int from, List<Segment<T>> merged) {
+        final Segment<T> segment;
+        try {
+            segment = merge(merged, builder, from == 0);
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                isMerging = false;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // segments flushed during the merge were appended after the merged ones
+            final List<Segment<T>> segments = new ArrayList<>(layers.segments.subList(0, from));
+            segments.add(segment);
+            segments.addAll(layers.segments.subList(from + merged.size(), layers.segments.size()));
+            layers = new Layers<T>(layers.delta, layers.flushing, Collections.unmodifiableList(segments));
+            isMerging = false;
+            // segments may have piled up during the merge
+            maybeMerge();
+        }
+    }
+
+    /**
+     * Merges {@code segments}, ordered from oldest to newest, into one. Newer
+     * entries and tombstones win. Tombstones are dropped if
+     * {@code isBottom}, as nothing older remains to delete, and kept
+     * otherwise.
+     */
+    static <T> Segment<T> merge(List<Segment<T>> segments, FSTBuilder<T> builder, boolean isBottom) {
+        final PriorityQueue<SegmentIterator<T>> heads = new PriorityQueue<>((a, b) -> {
+            final int c = FSTBuilder.compare(a.key, b.key);
+            return c != 0 ? c : Integer.compare(b.age, a.age);
+        });
+        for (int i = 0; i < segments.size(); i++) {
+            final var iterator = new SegmentIterator<T>(segments.get(i), i);
+            if (iterator.advance()) {
+                heads.add(iterator);
+            }
+        }
+
+        final List<byte[]> tombstones = new ArrayList<>();
+        final long[] numKeys = { 0 };
+        final Iterator<Map.Entry<byte[], T>> merged = new Iterator<>() {
+            private Map.Entry<byte[], T> next = findNext();
+
+            private Map.Entry<byte[], T> findNext() {
+                while (!heads.isEmpty()) {
+                    final SegmentIterator<T> newest = heads.poll();
+                    final byte[] key = newest.key;
+                    final Optional<T> value = newest.value;
+                    if (newest.advance()) {
+                        heads.add(newest);
+                    }
+                    // skip the older records of the same key
+                    while (!heads.isEmpty() && FSTBuilder.compare(heads.peek().key, key) == 0) {
+                        final SegmentIterator<T> older = heads.poll();
+                        if (older.advance()) {
+                            heads.add(older);
+                        }
+                    }
+                    if (value.isPresent()) {
+                        numKeys[0]++;
+                        return Map.entry(key, value.get());
+                    }
+                    if (!isBottom) {
+                        tombstones.add(key);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<byte[], T> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final Map.Entry<byte[], T> current = next;
+                next = findNext();
+                return current;
+            }
+        };
+        final Stream<Map.Entry<byte[], T>> entries = StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        // tombstones are collected while the entries are built
+        final FST<T> entriesFST = builder.build(entries);
+        return new Segment<T>(entriesFST,
+                builder.build(tombstones.stream().map(key -> Map.entry(key, builder.defaultValue()))),
+                numKeys[0] + tombstones.size());
+    }
+
+    static class Segment<T> {
+        final FST<T> entries;
+        final FST<T> tombstones;
+        // number of entries and tombstones, which a merge enumerates
+        final long size;
+
+        Segment(FST<T> entries, FST<T> tombstones, long size) {
+            this.entries = entries;
+            this.tombstones = tombstones;
+            this.size = size;
+        }
+    }
+
+    private static class Layers<T> {
+        final NavigableMap<byte[], Optional<T>> delta;
+        // delta being built into a segment, or null
+        final NavigableMap<byte[], Optional<T>> flushing;
+        // oldest first
+        final List<Segment<T>> segments;
+
+        Layers(NavigableMap<byte[], Optional<T>> delta, NavigableMap<byte[], Optional<T>> flushing,
+                List<Segment<T>> segments) {
+            this.delta = delta;
+            this.flushing = flushing;
+            this.segments = segments;
+        }
+    }
+
+    /**
+     * Enumerates the entries and tombstones of a segment together in key
+     * order. A tombstone has an empty value.
+     */
+    private static class SegmentIterator<T> {
+        final int age;
+        private final PredictiveCursor<T> entries;
+        private final PredictiveCursor<T> tombstones;
+        private boolean hasEntry;
+        private boolean hasTombstone;
+        byte[] key;
+        Optional<T> value;
+
+        SegmentIterator(Segment<T> segment, int age) {
+            this.age = age;
+            this.entries = segment.entries.predictiveSearch(new byte[0]);
+            this.tombstones = segment.tombstones.predictiveSearch(new byte[0]);
+            this.hasEntry = entries.next();
+            this.hasTombstone = tombstones.next();
+        }
+
+        boolean advance() {
+            if (!hasEntry && !hasTombstone) {
+                return false;
+            }
+            // a key is never both an entry and a tombstone of a segment
+            final boolean isEntry = !hasTombstone || hasEntry && Arrays.compareUnsigned(entries.key(), 0,
+                    entries.keyLength(), tombstones.key(), 0, tombstones.keyLength()) < 0;
+            if (isEntry) {
+                key = Arrays.copyOf(entries.key(), entries.keyLength());
+                value = Optional.of(entries.output());
+                hasEntry = entries.next();
+            } else {
+                key = Arrays.copyOf(tombstones.key(), tombstones.keyLength());
+                value = Optional.empty();
+                hasTombstone = tombstones.next();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.dagr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable reader of a packed list of values of a {@link MultiValueFST}.
+ * Values are decoded one by one as the list is iterated with {@link #next()},
+ * so iterating allocates nothing but the decoded values.
+ */
+public class ValueList<T> {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final FSTBuilder<T> codec;
+    private byte[] packed;
+    private ByteBuffer buffer = EMPTY;
+    private int size;
+    private int index;
+    private int offset;
+    private T value;
+
+    ValueList(FSTBuilder<T> codec) {
+        this.codec = codec;
+    }
+
+    void reset(byte[] packed) {
+        // lists of the same key are the same array, so keep the buffer
+        if (packed != this.packed) {
+            this.packed = packed;
+            this.buffer = ByteBuffer.wrap(packed);
+        }
+        buffer.position(0);
+        size = (int) Varints.get(buffer);
+        offset = buffer.position();
+        index = 0;
+        value = null;
+    }
+
+    void clear() {
+        size = 0;
+        index = 0;
+        value = null;
+    }
+
+    /**
+     * Returns the number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves to the next value. Returns false if there are no more values.
+     */
+    public boolean next() {
+        if (index == size) {
+            value = null;
+            return false;
+        }
+        value = codec.readOutput(buffer, offset);
+        offset += codec.outputSize(value);
+        index++;
+        return true;
+    }
+
+    /**
+     * Returns the current value.
+     */
+    public T value() {
+        assert value != null;
+        return value;
+    }
+}
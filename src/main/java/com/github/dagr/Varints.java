@@ -0,0 +1,78 @@
+package com.github.dagr;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length encoding of non-negative integers, 7 bits per byte with the
+ * highest bit set on all bytes but the last.
+ */
+final class Varints {
+    private Varints() {
+    }
+
+    /**
+     * Returns the number of bytes {@code value} is encoded in.
+     */
+    static int size(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void put(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a varint at the position of {@code buffer} and advances it.
+     */
+    static long get(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Reads a varint at {@code offset} of {@code buffer} without moving its
+     * position.
+     */
+    static long get(ByteBuffer buffer, int offset) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get(offset++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static long read(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
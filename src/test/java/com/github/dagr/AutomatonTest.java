@@ -0,0 +1,75 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class AutomatonTest {
+    boolean matches(Automaton automaton, String key) {
+        return automaton.matches(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGlob() {
+        final var automaton = Automaton.glob("foo*bar?");
+        assertTrue(matches(automaton, "foobarx"));
+        assertTrue(matches(automaton, "foo-bar-bar!"));
+        assertTrue(matches(automaton, "foobar\u3042"));
+        assertFalse(matches(automaton, "foobar"));
+        assertFalse(matches(automaton, "fobarx"));
+
+        final var classes = Automaton.glob("[a-c]x[!0-9]\\*");
+        assertTrue(matches(classes, "bxy*"));
+        assertFalse(matches(classes, "dxy*"));
+        assertFalse(matches(classes, "bx1*"));
+        assertFalse(matches(classes, "bxy"));
+    }
+
+    @Test
+    public void testRegex() {
+        final var automaton = Automaton.regex("(ab|c)+d?[xy\u3042].");
+        assertTrue(matches(automaton, "abcxz"));
+        assertTrue(matches(automaton, "cd\u3042\u3044"));
+        assertFalse(matches(automaton, "dxz"));
+        assertFalse(matches(automaton, "abx"));
+
+        assertTrue(matches(Automaton.regex(""), ""));
+        assertFalse(matches(Automaton.regex(""), "a"));
+        assertTrue(matches(Automaton.regex("a*"), "aaa"));
+    }
+
+    @Test
+    public void testMalformedPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> Automaton.regex("(a"));
+        assertThrows(IllegalArgumentException.class, () -> Automaton.regex("a)"));
+        assertThrows(IllegalArgumentException.class, () -> Automaton.regex("*a"));
+        assertThrows(IllegalArgumentException.class, () -> Automaton.glob("[ab"));
+        assertThrows(IllegalArgumentException.class, () -> Automaton.glob("a\\"));
+    }
+
+    @Test
+    public void testIntersect() {
+        final var fst = new IntegerFSTBuilder().build(List.of(Map.entry("apr", 30), Map.entry("aug", 31),
+                Map.entry("dec", 31), Map.entry("jan", 31), Map.entry("jul", 31), Map.entry("jun", 30)).stream()
+                .map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue())));
+        final List<String> matches = new ArrayList<>();
+        fst.intersect(Automaton.glob("ju?"), (key, length, output) -> matches.add(new String(key, 0, length) + "/" + output));
+        assertEquals(List.of("jul/31", "jun/30"), matches);
+
+        matches.clear();
+        fst.intersect(Automaton.regex("a.*|.*c"), (key, length, output) -> matches.add(new String(key, 0, length)));
+        assertEquals(List.of("apr", "aug", "dec"), matches);
+
+        matches.clear();
+        fst.intersect(Automaton.regex("x*"), (key, length, output) -> matches.add(new String(key, 0, length)));
+        assertEquals(List.of(), matches);
+    }
+}
@@ -2,11 +2,18 @@ package com.github.dagr;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
 
 import org.junit.jupiter.api.Test;
 
@@ -183,4 +190,139 @@ public class BytesFSTBuilderTest {
         var fst = buildFST(lexicon);
         assertEquals(10, fst.states.size());
     }
+
+    @Test
+    public void testBuildWithBoundedRegistry() {
+        final var random = new Random(42);
+        final TreeMap<String, String> lexicon = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            final var key = new StringBuilder();
+            final int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(4)));
+            }
+            lexicon.put(key.toString(), Integer.toString(random.nextInt(4)));
+        }
+
+        final var minimal = buildFST(new ArrayList<>(lexicon.entrySet()));
+        final var builder = new BytesFSTBuilder();
+        builder.setRegistryCapacity(16);
+        final var bounded = builder.build(lexicon.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue().getBytes())));
+
+        assertEquals(true, bounded.states.size() >= minimal.states.size());
+        for (Map.Entry<String, String> entry : lexicon.entrySet()) {
+            assertArrayEquals(entry.getValue().getBytes(), bounded.get(entry.getKey().getBytes()).get());
+        }
+        for (int id = 0; id < bounded.states.size(); id++) {
+            assertEquals(id, bounded.states.get(id).id);
+        }
+    }
+
+    @Test
+    public void testBuildToChannel() throws IOException {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("a", "1"));
+        lexicon.add(Map.entry("ab", "12"));
+        lexicon.add(Map.entry("mop", "0"));
+        lexicon.add(Map.entry("moth", "1"));
+        lexicon.add(Map.entry("pop", "2"));
+        lexicon.add(Map.entry("star", "3"));
+        lexicon.add(Map.entry("stop", "4"));
+        lexicon.add(Map.entry("top", "5"));
+
+        final var out = new ByteArrayOutputStream();
+        final int numStates = new BytesFSTBuilder().build(
+                lexicon.stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue().getBytes())),
+                Channels.newChannel(out));
+        assertEquals(buildFST(lexicon).states.size(), numStates);
+
+        final var fst = FST.read(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())),
+                new BytesFSTBuilder());
+        assertEquals(numStates, fst.states.size());
+        for (Map.Entry<String, String> entry : lexicon) {
+            assertArrayEquals(entry.getValue().getBytes(), fst.get(entry.getKey().getBytes()).get());
+        }
+        assertEquals(Optional.empty(), fst.get("mo".getBytes()));
+    }
+
+    @Test
+    public void testBuildToChannelWithBoundedRegistry() throws IOException {
+        final var random = new Random(42);
+        final TreeMap<String, String> lexicon = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            final var key = new StringBuilder();
+            final int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(4)));
+            }
+            lexicon.put(key.toString(), Integer.toString(random.nextInt(400)));
+        }
+
+        final var out = new ByteArrayOutputStream();
+        final var builder = new BytesFSTBuilder();
+        builder.setRegistryCapacity(16);
+        builder.build(lexicon.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue().getBytes())),
+                Channels.newChannel(out));
+
+        final var fst = FST.read(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())),
+                new BytesFSTBuilder());
+        for (Map.Entry<String, String> entry : lexicon.entrySet()) {
+            assertArrayEquals(entry.getValue().getBytes(), fst.get(entry.getKey().getBytes()).get());
+        }
+    }
+
+    @Test
+    public void testEqualOutputsAreShared() {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("ac", "12"));
+        lexicon.add(Map.entry("ad", "13"));
+        lexicon.add(Map.entry("bc", "42"));
+        lexicon.add(Map.entry("bd", "43"));
+
+        final var fst = buildFST(lexicon);
+        // the states after 'a' and 'b' both output "2" on 'c' and "3" on 'd'
+        assertEquals(3, fst.states.size());
+        final var state = fst.initialState.transit((byte) 'a').get();
+        assertEquals(state, fst.initialState.transit((byte) 'b').get());
+        for (Map.Entry<String, String> entry : lexicon) {
+            assertArrayEquals(entry.getValue().getBytes(), fst.get(entry.getKey().getBytes()).get());
+        }
+    }
+
+    @Test
+    public void testBuildStats() {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("ac", "12"));
+        lexicon.add(Map.entry("ad", "13"));
+        lexicon.add(Map.entry("bc", "42"));
+        lexicon.add(Map.entry("bd", "43"));
+
+        final List<BuildStats> finished = new ArrayList<>();
+        final var builder = new BytesFSTBuilder();
+        builder.setBuildListener(new BuildListener() {
+            @Override
+            public void onBuildFinished(BuildStats stats) {
+                finished.add(stats);
+            }
+        });
+        final var fst = builder.build(
+                lexicon.stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue().getBytes())));
+
+        assertEquals(1, finished.size());
+        final BuildStats stats = finished.get(0);
+        assertEquals(4, stats.numKeys());
+        assertEquals(fst.states.size(), stats.numStates());
+        assertEquals(stats.numStates(), stats.registryMisses());
+        // the final states of "ad", "bc" and "bd" and the state after 'b' are found in the registry
+        assertEquals(4, stats.registryHits());
+        assertEquals(4, stats.numTransitions());
+        // "1", "4", "2" and "3", each with a length byte
+        assertEquals(8, stats.outputBytes());
+        assertEquals(3, stats.peakSpineLength());
+        // phases are timed for a listener
+        assertTrue(stats.registryNanos() > 0);
+        assertTrue(stats.registryNanos() + stats.outputNanos() <= stats.elapsedNanos());
+    }
 }
@@ -0,0 +1,88 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class DictionaryHolderTest {
+    FST<Integer> build(int output) {
+        return new IntegerFSTBuilder().build(List.of(Map.entry("key".getBytes(), output)).stream());
+    }
+
+    @Test
+    public void testReleaseAfterReadersDrain() {
+        final List<FST<Integer>> released = new ArrayList<>();
+        final var first = build(1);
+        final var holder = new DictionaryHolder<FST<Integer>>(first, released::add);
+
+        final var lease = holder.acquire();
+        holder.swap(build(2));
+        // the old dictionary is still leased
+        assertEquals(List.of(), released);
+        assertEquals(1, lease.get().get("key".getBytes()).get());
+        try (var newLease = holder.acquire()) {
+            assertEquals(2, newLease.get().get("key".getBytes()).get());
+        }
+
+        lease.close();
+        assertEquals(List.of(first), released);
+    }
+
+    @Test
+    public void testCloseTwice() {
+        final List<FST<Integer>> released = new ArrayList<>();
+        final var first = build(1);
+        final var holder = new DictionaryHolder<FST<Integer>>(first, released::add);
+
+        final var lease = holder.acquire();
+        final var other = holder.acquire();
+        holder.swap(build(2));
+        lease.close();
+        lease.close();
+        // the other reader still holds the old dictionary
+        assertEquals(List.of(), released);
+        other.close();
+        assertEquals(List.of(first), released);
+    }
+
+    @Test
+    public void testSwapWhileReading() throws Exception {
+        final var holder = new DictionaryHolder<FST<Integer>>(build(0));
+        final var isRunning = new AtomicBoolean(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<Integer>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(executor.submit(() -> {
+                int last = 0;
+                while (isRunning.get()) {
+                    try (var lease = holder.acquire()) {
+                        final int output = lease.get().get("key".getBytes()).get();
+                        // readers never see an older dictionary after a newer one
+                        assertTrue(output >= last);
+                        last = output;
+                    }
+                }
+                return last;
+            }));
+        }
+        for (int i = 1; i <= 100; i++) {
+            holder.swap(build(i));
+        }
+        isRunning.set(false);
+        for (Future<Integer> reader : readers) {
+            reader.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+public class DoubleArrayCompilerTest {
+    FST<byte[]> buildFST(List<Map.Entry<String, String>> lexicon) {
+        final var builder = new BytesFSTBuilder();
+        return builder.build(
+                lexicon.stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue().getBytes())));
+    }
+
+    // asserts that the double array has the same transitions as the graph along every key
+    void assertSameAlongKeys(FST<byte[]> fst, DoubleArrayFST<byte[]> da, List<Map.Entry<String, String>> lexicon) {
+        for (Map.Entry<String, String> entry : lexicon) {
+            State<byte[]> state = fst.initialState;
+            int node = da.initialNode();
+            for (byte label : entry.getKey().getBytes()) {
+                assertOutputEquals(state.transitOutput(label), da.transitOutput(node, label));
+                state = state.transit(label).get();
+                node = da.transit(node, label);
+                assertEquals(state.isFinal, da.isFinal(node));
+                assertOutputEquals(state.getStateOutput(), da.getStateOutput(node));
+            }
+            assertEquals(true, da.isFinal(node));
+        }
+    }
+
+    void assertOutputEquals(Optional<byte[]> expected, Optional<byte[]> actual) {
+        assertEquals(expected.isPresent(), actual.isPresent());
+        if (expected.isPresent()) {
+            assertArrayEquals(expected.get(), actual.get());
+        }
+    }
+
+    @Test
+    public void testCompileWithKeysHaveSamePrefix() {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("a", "1"));
+        lexicon.add(Map.entry("ab", "2"));
+
+        final var fst = buildFST(lexicon);
+        final var da = new DoubleArrayCompiler<byte[]>().compile(fst);
+        assertSameAlongKeys(fst, da, lexicon);
+
+        final int node = da.initialNode();
+        assertEquals(false, da.isFinal(node));
+        assertEquals(-1, da.transit(node, (byte) 'b'));
+        assertEquals(-1, da.transit(da.transit(node, (byte) 'a'), (byte) 'a'));
+    }
+
+    @Test
+    public void testCompileWithFixedLengthKeys() {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("apr", "30"));
+        lexicon.add(Map.entry("aug", "31"));
+        lexicon.add(Map.entry("dec", "31"));
+        lexicon.add(Map.entry("feb", "28"));
+        lexicon.add(Map.entry("jan", "31"));
+        lexicon.add(Map.entry("jul", "31"));
+        lexicon.add(Map.entry("jun", "30"));
+        lexicon.add(Map.entry("may", "31"));
+
+        final var fst = buildFST(lexicon);
+        final var da = new DoubleArrayCompiler<byte[]>().compile(fst);
+        assertSameAlongKeys(fst, da, lexicon);
+        assertEquals(-1, da.transit(da.transit(da.initialNode(), (byte) 'j'), (byte) 'e'));
+    }
+
+    @Test
+    public void testCompileComplicatedFST() {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("mop", "0"));
+        lexicon.add(Map.entry("moth", "1"));
+        lexicon.add(Map.entry("pop", "2"));
+        lexicon.add(Map.entry("star", "3"));
+        lexicon.add(Map.entry("stop", "4"));
+        lexicon.add(Map.entry("top", "5"));
+
+        final var fst = buildFST(lexicon);
+        final var da = new DoubleArrayCompiler<byte[]>().compile(fst);
+        assertSameAlongKeys(fst, da, lexicon);
+    }
+
+    @Test
+    public void testCompileWithAllLabels() {
+        final var builder = new BytesFSTBuilder();
+        final List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            entries.add(Map.entry(new byte[] { (byte) i, (byte) (255 - i) }, new byte[] { (byte) i }));
+        }
+        final var fst = builder.build(entries.stream());
+        final var da = new DoubleArrayCompiler<byte[]>().compile(fst);
+        for (Map.Entry<byte[], byte[]> entry : entries) {
+            final byte[] key = entry.getKey();
+            final int node = da.transit(da.initialNode(), key[0]);
+            assertArrayEquals(entry.getValue(), da.transitOutput(da.initialNode(), key[0]).get());
+            assertEquals(true, da.isFinal(da.transit(node, key[1])));
+            assertEquals(-1, da.transit(node, (byte) (key[1] + 1)));
+        }
+    }
+
+    @Test
+    public void testCompileRandomKeys() {
+        // enough sparse nodes that slots are dropped from the free list after failed placements
+        final var random = new Random(1);
+        final TreeMap<byte[], Integer> entries = new TreeMap<>(FSTBuilder::compare);
+        while (entries.size() < 20000) {
+            final byte[] key = new byte[1 + random.nextInt(8)];
+            random.nextBytes(key);
+            entries.put(key, entries.size());
+        }
+        final var fst = new IntegerFSTBuilder().build(entries.entrySet().stream());
+        final var da = new DoubleArrayCompiler<Integer>().compile(fst);
+        for (Map.Entry<byte[], Integer> entry : entries.entrySet()) {
+            assertEquals(entry.getValue(), da.get(entry.getKey()).get());
+        }
+    }
+}
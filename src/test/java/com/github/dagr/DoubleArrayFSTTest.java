@@ -0,0 +1,116 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DoubleArrayFSTTest {
+    @TempDir
+    Path tempDir;
+
+    List<Map.Entry<String, String>> createLexicon() {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("a", "1"));
+        lexicon.add(Map.entry("ab", "12"));
+        lexicon.add(Map.entry("mop", "0"));
+        lexicon.add(Map.entry("moth", "1"));
+        lexicon.add(Map.entry("pop", "2"));
+        lexicon.add(Map.entry("star", "3"));
+        lexicon.add(Map.entry("stop", "4"));
+        lexicon.add(Map.entry("top", "5"));
+        return lexicon;
+    }
+
+    DoubleArrayFST<byte[]> compile(List<Map.Entry<String, String>> lexicon) {
+        final var fst = new BytesFSTBuilder().build(
+                lexicon.stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue().getBytes())));
+        return new DoubleArrayCompiler<byte[]>().compile(fst);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        final var lexicon = createLexicon();
+        final Path path = tempDir.resolve("fst.bin");
+        compile(lexicon).save(path);
+
+        final var loaded = DoubleArrayFST.load(path, new BytesFSTBuilder());
+        for (Map.Entry<String, String> entry : lexicon) {
+            assertArrayEquals(entry.getValue().getBytes(), loaded.get(entry.getKey().getBytes()).get());
+        }
+        assertEquals(Optional.empty(), loaded.get("mo".getBytes()));
+        assertEquals(Optional.empty(), loaded.get("x".getBytes()));
+
+        // saving a loaded FST produces the same file
+        final Path copy = tempDir.resolve("copy.bin");
+        loaded.save(copy);
+        assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(copy));
+    }
+
+    @Test
+    public void testSaveAndLoadIntegers() throws IOException {
+        final var fst = new IntegerFSTBuilder().build(List.of(Map.entry("jan", 31), Map.entry("jun", 30)).stream()
+                .map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue())));
+        final Path path = tempDir.resolve("fst.bin");
+        new DoubleArrayCompiler<Integer>().compile(fst).save(path);
+
+        final var loaded = DoubleArrayFST.load(path, new IntegerFSTBuilder());
+        assertEquals(31, loaded.get("jan".getBytes()).get());
+        assertEquals(30, loaded.get("jun".getBytes()).get());
+        assertEquals(Optional.empty(), loaded.get("ju".getBytes()));
+    }
+
+    @Test
+    public void testEqualOutputsAreSavedOnce() throws IOException {
+        // distinct boxes of one value must share a single encoded output
+        final var fst = new IntegerFSTBuilder().build(List.of("a", "b", "c").stream()
+                .map(key -> Map.entry(key.getBytes(), Integer.valueOf(1000))));
+        final Path path = tempDir.resolve("fst.bin");
+        new DoubleArrayCompiler<Integer>().compile(fst).save(path);
+
+        final var header = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(Integer.BYTES, header.getInt(16));
+        final var loaded = DoubleArrayFST.load(path, new IntegerFSTBuilder());
+        assertEquals(1000, loaded.get("c".getBytes()).get());
+    }
+
+    @Test
+    public void testLoadCorruptedFile() throws IOException {
+        final Path path = tempDir.resolve("fst.bin");
+        compile(createLexicon()).save(path);
+
+        final byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> DoubleArrayFST.load(path, new BytesFSTBuilder()));
+        // skipping verification still loads the file
+        DoubleArrayFST.load(path, new BytesFSTBuilder(), false);
+
+        bytes[0] ^= 1;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> DoubleArrayFST.load(path, new BytesFSTBuilder(), false));
+    }
+
+    @Test
+    public void testLoadUnsupportedVersion() throws IOException {
+        final Path path = tempDir.resolve("fst.bin");
+        compile(createLexicon()).save(path);
+
+        final byte[] bytes = Files.readAllBytes(path);
+        bytes[4] = (byte) (DoubleArrayFST.VERSION + 1);
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> DoubleArrayFST.load(path, new BytesFSTBuilder()));
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ExternalSorterTest {
+    @TempDir
+    Path tempDir;
+
+    List<Map.Entry<byte[], Integer>> createEntries(int size, Random random) {
+        final List<Map.Entry<byte[], Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            final byte[] key = new byte[1 + random.nextInt(6)];
+            for (int j = 0; j < key.length; j++) {
+                // include bytes above 0x7F, which sort after ASCII
+                key[j] = (byte) (random.nextBoolean() ? 'a' + random.nextInt(3) : 0xF0 + random.nextInt(3));
+            }
+            entries.add(Map.entry(key, i));
+        }
+        return entries;
+    }
+
+    @Test
+    public void testSortWithSpills() throws IOException {
+        final var entries = createEntries(5000, new Random(42));
+        final Map<String, Integer> last = new HashMap<>();
+        for (Map.Entry<byte[], Integer> entry : entries) {
+            last.put(new String(entry.getKey(), "ISO-8859-1"), entry.getValue());
+        }
+
+        final var sorter = new ExternalSorter<Integer>(new IntegerFSTBuilder());
+        sorter.setTempDir(tempDir);
+        sorter.setChunkSize(100);
+        sorter.setDuplicateKeys(ExternalSorter.DuplicateKeys.KEEP_LAST);
+        try (var sorted = sorter.sort(entries.stream())) {
+            final List<Map.Entry<byte[], Integer>> result = sorted.collect(Collectors.toList());
+            assertEquals(last.size(), result.size());
+            for (int i = 1; i < result.size(); i++) {
+                assertEquals(true, FSTBuilder.compare(result.get(i - 1).getKey(), result.get(i).getKey()) < 0);
+            }
+            for (Map.Entry<byte[], Integer> entry : result) {
+                assertEquals(last.get(new String(entry.getKey(), "ISO-8859-1")), entry.getValue());
+            }
+        }
+        try (var spills = Files.list(tempDir)) {
+            assertEquals(0, spills.count());
+        }
+    }
+
+    @Test
+    public void testSortKeepFirst() throws IOException {
+        final List<Map.Entry<byte[], Integer>> entries = new ArrayList<>();
+        entries.add(Map.entry("b".getBytes(), 1));
+        entries.add(Map.entry("a".getBytes(), 2));
+        entries.add(Map.entry("b".getBytes(), 3));
+        entries.add(Map.entry("a".getBytes(), 4));
+        entries.add(Map.entry("c".getBytes(), 5));
+
+        final var sorter = new ExternalSorter<Integer>(new IntegerFSTBuilder());
+        sorter.setTempDir(tempDir);
+        sorter.setChunkSize(2);
+        sorter.setDuplicateKeys(ExternalSorter.DuplicateKeys.KEEP_FIRST);
+        try (var sorted = sorter.sort(entries.stream())) {
+            final var fst = new IntegerFSTBuilder().build(sorted);
+            assertEquals(2, fst.get("a".getBytes()).get());
+            assertEquals(1, fst.get("b".getBytes()).get());
+            assertEquals(5, fst.get("c".getBytes()).get());
+        }
+    }
+
+    @Test
+    public void testSortFailsOnDuplicateKeys() throws IOException {
+        final List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>();
+        entries.add(Map.entry("b".getBytes(), "1".getBytes()));
+        entries.add(Map.entry("a".getBytes(), "2".getBytes()));
+        entries.add(Map.entry("\u00e9".getBytes(StandardCharsets.UTF_8), "3".getBytes()));
+        entries.add(Map.entry("\u00e9".getBytes(StandardCharsets.UTF_8), "4".getBytes()));
+
+        final var sorter = new ExternalSorter<byte[]>(new BytesFSTBuilder());
+        try (var sorted = sorter.sort(entries.stream())) {
+            final var e = assertThrows(IllegalArgumentException.class, () -> sorted.forEach(entry -> {
+            }));
+            assertEquals("Duplicate key: \u00e9", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSortInMemory() throws IOException {
+        final List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>();
+        entries.add(Map.entry(new byte[] { (byte) 0xE3 }, "1".getBytes()));
+        entries.add(Map.entry("z".getBytes(), "2".getBytes()));
+
+        final var sorter = new ExternalSorter<byte[]>(new BytesFSTBuilder());
+        try (var sorted = sorter.sort(entries.stream())) {
+            final var result = sorted.collect(Collectors.toList());
+            assertArrayEquals("z".getBytes(), result.get(0).getKey());
+            assertArrayEquals(new byte[] { (byte) 0xE3 }, result.get(1).getKey());
+        }
+    }
+
+    @Test
+    public void testCloseAfterPartialRead() throws IOException {
+        final var sorter = new ExternalSorter<Integer>(new IntegerFSTBuilder());
+        sorter.setTempDir(tempDir);
+        sorter.setChunkSize(100);
+        sorter.setDuplicateKeys(ExternalSorter.DuplicateKeys.KEEP_FIRST);
+        try (var sorted = sorter.sort(createEntries(1000, new Random(7)).stream())) {
+            assertEquals(10, sorted.limit(10).count());
+        }
+        try (var spills = Files.list(tempDir)) {
+            assertEquals(0, spills.count());
+        }
+    }
+
+    @Test
+    public void testSpillsDeletedOnFailure() throws IOException {
+        final var sorter = new ExternalSorter<Integer>(new IntegerFSTBuilder());
+        sorter.setTempDir(tempDir);
+        sorter.setChunkSize(100);
+        final var entries = createEntries(1000, new Random(7)).stream().map(entry -> {
+            if (entry.getValue() == 500) {
+                throw new IllegalStateException("broken source");
+            }
+            return entry;
+        });
+        assertThrows(IllegalStateException.class, () -> sorter.sort(entries));
+        try (var spills = Files.list(tempDir)) {
+            assertEquals(0, spills.count());
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+public class FSTTest {
+    FST<byte[]> buildBytesFST(List<Map.Entry<String, String>> lexicon) {
+        final var builder = new BytesFSTBuilder();
+        return builder.build(
+                lexicon.stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue().getBytes())));
+    }
+
+    FST<Integer> buildIntegerFST(List<Map.Entry<String, Integer>> lexicon) {
+        final var builder = new IntegerFSTBuilder();
+        return builder.build(lexicon.stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue())));
+    }
+
+    List<Map.Entry<String, String>> createBytesLexicon() {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("a", "1"));
+        lexicon.add(Map.entry("ab", "12"));
+        lexicon.add(Map.entry("abc", "121"));
+        lexicon.add(Map.entry("mop", "0"));
+        lexicon.add(Map.entry("moth", "1"));
+        lexicon.add(Map.entry("pop", "2"));
+        lexicon.add(Map.entry("star", "3"));
+        lexicon.add(Map.entry("stop", "4"));
+        lexicon.add(Map.entry("top", "5"));
+        return lexicon;
+    }
+
+    @Test
+    public void testGetBytes() {
+        final var lexicon = createBytesLexicon();
+        final var fst = buildBytesFST(lexicon);
+        for (Map.Entry<String, String> entry : lexicon) {
+            assertArrayEquals(entry.getValue().getBytes(), fst.get(entry.getKey().getBytes()).get());
+        }
+        assertEquals(Optional.empty(), fst.get("".getBytes()));
+        assertEquals(Optional.empty(), fst.get("mo".getBytes()));
+        assertEquals(Optional.empty(), fst.get("mops".getBytes()));
+        assertEquals(Optional.empty(), fst.get("x".getBytes()));
+    }
+
+    @Test
+    public void testGetBytesWithOffset() {
+        final var fst = buildBytesFST(createBytesLexicon());
+        final byte[] buf = "xxstopxx".getBytes();
+        assertArrayEquals("4".getBytes(), fst.get(buf, 2, 4).get());
+        assertEquals(Optional.empty(), fst.get(buf, 2, 3));
+        assertEquals(Optional.empty(), fst.get(buf, 1, 4));
+    }
+
+    @Test
+    public void testGetBytesWithoutOutput() {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("a", ""));
+        lexicon.add(Map.entry("b", "2"));
+
+        final var fst = buildBytesFST(lexicon);
+        assertArrayEquals(new byte[0], fst.get("a".getBytes()).get());
+        assertArrayEquals("2".getBytes(), fst.get("b".getBytes()).get());
+    }
+
+    @Test
+    public void testGetIntegers() {
+        final List<Map.Entry<String, Integer>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("apr", 30));
+        lexicon.add(Map.entry("aug", 31));
+        lexicon.add(Map.entry("dec", 31));
+        lexicon.add(Map.entry("feb", 28));
+        lexicon.add(Map.entry("jan", 31));
+        lexicon.add(Map.entry("jul", 31));
+        lexicon.add(Map.entry("jun", 30));
+        lexicon.add(Map.entry("may", 31));
+
+        final var fst = buildIntegerFST(lexicon);
+        for (Map.Entry<String, Integer> entry : lexicon) {
+            assertEquals(entry.getValue(), fst.get(entry.getKey().getBytes()).get());
+        }
+        assertEquals(Optional.empty(), fst.get("ju".getBytes()));
+        assertEquals(Optional.empty(), fst.get("mar".getBytes()));
+    }
+
+    @Test
+    public void testGetFromDoubleArray() {
+        final var lexicon = createBytesLexicon();
+        final var da = new DoubleArrayCompiler<byte[]>().compile(buildBytesFST(lexicon));
+        for (Map.Entry<String, String> entry : lexicon) {
+            assertArrayEquals(entry.getValue().getBytes(), da.get(entry.getKey().getBytes()).get());
+        }
+        assertEquals(Optional.empty(), da.get("mo".getBytes()));
+        assertEquals(Optional.empty(), da.get("mops".getBytes()));
+        assertEquals(Optional.empty(), da.get("x".getBytes()));
+    }
+
+    @Test
+    public void testCommonPrefixSearch() {
+        final var fst = buildBytesFST(createBytesLexicon());
+        final List<Integer> lengths = new ArrayList<>();
+        final List<String> outputs = new ArrayList<>();
+        final byte[] buf = "xabcd".getBytes();
+        fst.commonPrefixSearch(buf, 1, 4, (length, output) -> {
+            lengths.add(length);
+            outputs.add(new String(output));
+        });
+        assertEquals(List.of(1, 2, 3), lengths);
+        assertEquals(List.of("1", "12", "121"), outputs);
+
+        lengths.clear();
+        fst.commonPrefixSearch(buf, 1, 2, (length, output) -> lengths.add(length));
+        assertEquals(List.of(1, 2), lengths);
+
+        lengths.clear();
+        fst.commonPrefixSearch(buf, 0, 5, (length, output) -> lengths.add(length));
+        assertEquals(List.of(), lengths);
+    }
+
+    @Test
+    public void testCommonPrefixSearchOnDoubleArray() {
+        final var da = new DoubleArrayCompiler<byte[]>().compile(buildBytesFST(createBytesLexicon()));
+        final List<Integer> lengths = new ArrayList<>();
+        final List<String> outputs = new ArrayList<>();
+        da.commonPrefixSearch("stops".getBytes(), 0, 5, (length, output) -> {
+            lengths.add(length);
+            outputs.add(new String(output));
+        });
+        assertEquals(List.of(4), lengths);
+        assertEquals(List.of("4"), outputs);
+    }
+
+    List<String> collect(PredictiveCursor<byte[]> cursor) {
+        final List<String> result = new ArrayList<>();
+        while (cursor.next()) {
+            result.add(new String(cursor.key(), 0, cursor.keyLength()) + "/" + new String(cursor.output()));
+        }
+        return result;
+    }
+
+    @Test
+    public void testPredictiveSearch() {
+        final var fst = buildBytesFST(createBytesLexicon());
+        assertEquals(List.of("mop/0", "moth/1"), collect(fst.predictiveSearch("mo".getBytes())));
+        assertEquals(List.of("a/1", "ab/12", "abc/121"), collect(fst.predictiveSearch("a".getBytes())));
+        assertEquals(List.of("stop/4"), collect(fst.predictiveSearch("stop".getBytes())));
+        assertEquals(List.of(), collect(fst.predictiveSearch("stops".getBytes())));
+        assertEquals(List.of(), collect(fst.predictiveSearch("x".getBytes())));
+
+        final var cursor = fst.predictiveSearch(new byte[0]);
+        final List<String> all = collect(cursor);
+        assertEquals(createBytesLexicon().size(), all.size());
+        assertEquals("a/1", all.get(0));
+        assertEquals("top/5", all.get(all.size() - 1));
+        // the cursor stays exhausted until reset
+        assertEquals(false, cursor.next());
+
+        cursor.reset("xsty".getBytes(), 1, 2);
+        assertEquals(List.of("star/3", "stop/4"), collect(cursor));
+    }
+
+    @Test
+    public void testOrdinalAndKey() {
+        final var lexicon = createBytesLexicon();
+        final var fst = buildBytesFST(lexicon);
+        assertEquals(lexicon.size(), fst.numKeys());
+        for (int i = 0; i < lexicon.size(); i++) {
+            final byte[] key = lexicon.get(i).getKey().getBytes();
+            assertEquals(i, fst.ordinal(key));
+            assertArrayEquals(key, fst.key(i));
+            assertArrayEquals(lexicon.get(i).getValue().getBytes(), fst.output(i));
+        }
+        assertEquals(-1, fst.ordinal("mo".getBytes()));
+        assertEquals(-1, fst.ordinal("x".getBytes()));
+        assertThrows(IndexOutOfBoundsException.class, () -> fst.key(lexicon.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> fst.key(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> fst.output(lexicon.size()));
+    }
+
+    @Test
+    public void testOrdinalAndKeyOfDenseStates() {
+        // states with many transitions are searched by rank
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        for (char c = 'a'; c <= 'z'; c++) {
+            if (c % 3 == 0) {
+                lexicon.add(Map.entry(String.valueOf(c), String.valueOf(c)));
+            }
+            for (char d = 'a'; d <= 'z'; d += c % 4 + 1) {
+                lexicon.add(Map.entry("" + c + d, String.valueOf(d)));
+            }
+        }
+        final var fst = buildBytesFST(lexicon);
+        assertEquals(lexicon.size(), fst.numKeys());
+        for (int i = 0; i < lexicon.size(); i++) {
+            final byte[] key = lexicon.get(i).getKey().getBytes();
+            assertEquals(i, fst.ordinal(key));
+            assertArrayEquals(key, fst.key(i));
+            assertArrayEquals(lexicon.get(i).getValue().getBytes(), fst.output(i));
+        }
+    }
+
+    List<String> collect(Lattice lattice, byte[] text, int off) {
+        final List<String> result = new ArrayList<>();
+        for (int i = 0; i < lattice.size(); i++) {
+            result.add(lattice.start(i) + ":" + new String(text, off + lattice.start(i), lattice.end(i) - lattice.start(i))
+                    + "#" + lattice.ordinal(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void testLattice() {
+        final var fst = buildBytesFST(createBytesLexicon());
+        final var lattice = new Lattice();
+        final byte[] text = "xabcmopstop".getBytes();
+        fst.lattice(text, 1, text.length - 1, lattice);
+        final List<String> matches = collect(lattice, text, 1);
+        assertEquals(List.of("0:a#0", "0:ab#1", "0:abc#2", "3:mop#3", "6:stop#7", "7:top#8"), matches);
+        for (int i = 0; i < lattice.size(); i++) {
+            final int start = 1 + lattice.start(i);
+            final int len = lattice.end(i) - lattice.start(i);
+            assertEquals(lattice.ordinal(i), fst.ordinal(text, start, len));
+            assertArrayEquals(fst.get(text, start, len).get(), fst.output(lattice.ordinal(i)));
+        }
+
+        // the lattice is reused, and a buffer is read from its position
+        final var buffer = ByteBuffer.wrap("xxtopx".getBytes());
+        buffer.position(2);
+        fst.lattice(buffer, lattice);
+        assertEquals(1, lattice.size());
+        assertEquals(0, lattice.start(0));
+        assertEquals(3, lattice.end(0));
+        assertEquals(8, lattice.ordinal(0));
+        assertEquals(2, buffer.position());
+    }
+
+    List<String> fuzzySearch(FST<byte[]> fst, String key, int maxEdits) {
+        final List<String> result = new ArrayList<>();
+        fst.fuzzySearch(key.getBytes(), maxEdits, (buf, length, distance, output) -> result
+                .add(new String(buf, 0, length) + "/" + distance + "/" + new String(output)));
+        return result;
+    }
+
+    @Test
+    public void testFuzzySearch() {
+        final var fst = buildBytesFST(createBytesLexicon());
+        assertEquals(List.of("mop/0/0"), fuzzySearch(fst, "mop", 0));
+        assertEquals(List.of(), fuzzySearch(fst, "mo", 0));
+        assertEquals(List.of("mop/0/0", "pop/1/2", "top/1/5"), fuzzySearch(fst, "mop", 1));
+        assertEquals(List.of("mop/0/0", "moth/2/1", "pop/1/2", "stop/2/4", "top/1/5"), fuzzySearch(fst, "mop", 2));
+        assertEquals(List.of("star/1/3", "stop/1/4"), fuzzySearch(fst, "stap", 1));
+        assertEquals(List.of("a/1/1", "ab/2/12"), fuzzySearch(fst, "", 2));
+        assertEquals(List.of("a/1/1", "ab/0/12", "abc/1/121"), fuzzySearch(fst, "ab", 1));
+    }
+
+    @Test
+    public void testCursor() {
+        final var fst = buildBytesFST(createBytesLexicon());
+        final var cursor = fst.cursor();
+        assertEquals(true, cursor.next((byte) 'a'));
+        assertEquals(true, cursor.isFinal());
+        assertArrayEquals("1".getBytes(), cursor.output());
+        assertEquals(true, cursor.next((byte) 'b'));
+        assertArrayEquals("12".getBytes(), cursor.output());
+        assertEquals(false, cursor.next((byte) 'x'));
+        assertEquals(2, cursor.depth());
+        assertEquals(true, cursor.next((byte) 'c'));
+        assertArrayEquals("121".getBytes(), cursor.output());
+
+        cursor.reset();
+        assertEquals(true, cursor.next((byte) 'm'));
+        assertEquals(true, cursor.next((byte) 'o'));
+        assertEquals(false, cursor.isFinal());
+        assertEquals(true, cursor.next((byte) 'p'));
+        assertArrayEquals("0".getBytes(), cursor.output());
+    }
+
+    @Test
+    public void testLookupStats() {
+        final var stats = new LookupStats();
+        final var fst = buildBytesFST(createBytesLexicon()).withLookupStats(stats);
+        fst.get("stop".getBytes());
+        fst.get("mo".getBytes());
+        fst.get("xyz".getBytes());
+        assertEquals(3, stats.lookups());
+        assertEquals(2, stats.misses());
+        assertEquals(2.0, stats.averageDepth());
+
+        stats.reset();
+        assertEquals(0, stats.lookups());
+    }
+
+    @Test
+    public void testWriteDot() throws IOException {
+        final List<Map.Entry<String, String>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("a", "1"));
+        lexicon.add(Map.entry("b", "\"2"));
+        final var fst = buildBytesFST(lexicon);
+
+        final String dot = fst.toDot();
+        assertEquals("digraph G {\n  rankdir=LR;\n  node [shape=circle fixedsize=true];\n"
+                + "  \"0\" [label=\"0\" peripheries=2];\n" + "  \"1\" -> \"0\" [label=\"a/1\"];\n"
+                + "  \"1\" -> \"0\" [label=\"b/\\\"2\"];\n}", dot);
+
+        final var out = new ByteArrayOutputStream();
+        fst.writeDot(Channels.newChannel(out));
+        assertEquals(dot, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWriteEdgeList() throws IOException {
+        final var fst = buildBytesFST(createBytesLexicon());
+        final var edges = new StringBuilder();
+        fst.writeEdgeList(edges);
+
+        final String[] lines = edges.toString().split("\n");
+        assertEquals("#initial\t" + fst.initialState.id, lines[0]);
+        long numTransitions = 0;
+        long numFinals = 0;
+        for (FrozenState<byte[]> state : fst.states) {
+            numTransitions += state.numTransitions();
+            numFinals += state.isFinal ? 1 : 0;
+        }
+        assertEquals(1 + numTransitions + numFinals, lines.length);
+        assertEquals(true, edges.toString().contains(fst.initialState.id + "\t"
+                + ((FrozenState<byte[]>) fst.initialState.transit((byte) 't').get()).id + "\t116\t5\n"));
+    }
+
+    @Test
+    public void testGetAll() {
+        final var lexicon = createBytesLexicon();
+        final var fst = buildBytesFST(lexicon);
+        final String[] strings = { "", "a", "abc", "abd", "ab", "mo", "mop", "moth", "mothx", "stop", "x" };
+        final byte[][] keys = new byte[strings.length][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = strings[i].getBytes();
+        }
+
+        final byte[][] outputs = new byte[keys.length][];
+        final long[] ordinals = new long[keys.length];
+        assertEquals(6, fst.getAll(keys, outputs));
+        assertEquals(6, fst.ordinals(keys, ordinals));
+        for (int i = 0; i < keys.length; i++) {
+            final Optional<byte[]> expected = fst.get(keys[i]);
+            if (expected.isPresent()) {
+                assertArrayEquals(expected.get(), outputs[i]);
+            } else {
+                assertEquals(null, outputs[i]);
+            }
+            assertEquals(fst.ordinal(keys[i]), ordinals[i]);
+        }
+    }
+}
@@ -6,6 +6,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.jupiter.api.Test;
 
@@ -181,4 +184,50 @@ public class IntegerFSTBuilderTest {
         var fst = buildFST(lexicon);
         assertEquals(10, fst.states.size());
     }
+
+    @Test
+    public void testBuildWithSameLargeOutputs() {
+        final List<Map.Entry<String, Integer>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("aa", 1000));
+        lexicon.add(Map.entry("ab", 1000));
+
+        var fst = buildFST(lexicon);
+        assertEquals(3, fst.states.size());
+
+        var state1 = fst.initialState;
+        assertEquals(state1.transitOutput((byte) 'a').get(), 1000);
+    }
+
+    @Test
+    public void testBuildInParallel() {
+        final var random = new Random(42);
+        final TreeMap<String, Integer> lexicon = new TreeMap<>();
+        lexicon.put("", 7);
+        for (int i = 0; i < 5000; i++) {
+            final var key = new StringBuilder();
+            final int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(6)));
+            }
+            lexicon.put(key.toString(), random.nextInt(3));
+        }
+        final List<Map.Entry<byte[], Integer>> entries = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : lexicon.entrySet()) {
+            entries.add(Map.entry(entry.getKey().getBytes(), entry.getValue()));
+        }
+
+        final var pool = new ForkJoinPool(4);
+        try {
+            final var fst = new IntegerFSTBuilder().build(entries, pool);
+            final var sequential = new IntegerFSTBuilder().build(entries.stream());
+            // the parallel build is as small as the sequential one
+            assertEquals(sequential.states.size(), fst.states.size());
+            for (Map.Entry<String, Integer> entry : lexicon.entrySet()) {
+                assertEquals(entry.getValue(), fst.get(entry.getKey().getBytes()).get());
+            }
+            assertEquals(Optional.empty(), fst.get("aaaaaaaaa".getBytes()));
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
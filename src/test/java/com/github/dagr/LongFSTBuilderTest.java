@@ -0,0 +1,119 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+public class LongFSTBuilderTest {
+    LongFST buildFST(List<Map.Entry<String, Long>> lexicon) {
+        final var builder = new LongFSTBuilder();
+        return builder.build(lexicon.stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue())));
+    }
+
+    @Test
+    public void testBuildWithOutputsHaveSamePrefixAndSuffix() {
+        final List<Map.Entry<String, Long>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("aaa", 111L));
+        lexicon.add(Map.entry("aba", 121L));
+
+        final var fst = buildFST(lexicon);
+        assertEquals(4, fst.numStates());
+
+        final int state1 = fst.initialState();
+        assertEquals(111L, fst.outputs[fst.find(state1, (byte) 'a')]);
+        final int state2 = fst.targets[fst.find(state1, (byte) 'a')];
+        assertEquals(0L, fst.outputs[fst.find(state2, (byte) 'a')]);
+        assertEquals(10L, fst.outputs[fst.find(state2, (byte) 'b')]);
+        assertEquals(fst.targets[fst.find(state2, (byte) 'a')], fst.targets[fst.find(state2, (byte) 'b')]);
+
+        assertEquals(111L, fst.getOrDefault("aaa".getBytes(), -1));
+        assertEquals(121L, fst.getOrDefault("aba".getBytes(), -1));
+        assertEquals(-1L, fst.getOrDefault("ab".getBytes(), -1));
+    }
+
+    @Test
+    public void testBuildWithKeysHaveSamePrefix() {
+        final List<Map.Entry<String, Long>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("a", 5L));
+        lexicon.add(Map.entry("ab", 3L));
+        lexicon.add(Map.entry("abc", 7L));
+
+        final var fst = buildFST(lexicon);
+        assertEquals(5L, fst.getOrDefault("a".getBytes(), -1));
+        assertEquals(3L, fst.getOrDefault("ab".getBytes(), -1));
+        assertEquals(7L, fst.getOrDefault("abc".getBytes(), -1));
+
+        final List<Long> outputs = new ArrayList<>();
+        final List<Integer> lengths = new ArrayList<>();
+        fst.commonPrefixSearch("abcd".getBytes(), 0, 4, (length, output) -> {
+            lengths.add(length);
+            outputs.add(output);
+        });
+        assertEquals(List.of(1, 2, 3), lengths);
+        assertEquals(List.of(5L, 3L, 7L), outputs);
+    }
+
+    @Test
+    public void testBuildWithEmptyKey() {
+        final List<Map.Entry<String, Long>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("", 4L));
+        lexicon.add(Map.entry("a", 9L));
+
+        final var fst = buildFST(lexicon);
+        assertEquals(4L, fst.getOrDefault("".getBytes(), -1));
+        assertEquals(9L, fst.getOrDefault("a".getBytes(), -1));
+    }
+
+    @Test
+    public void testBuildComplicatedFST() {
+        final List<Map.Entry<String, Long>> lexicon = new ArrayList<>();
+        lexicon.add(Map.entry("mop", 0L));
+        lexicon.add(Map.entry("moth", 1L));
+        lexicon.add(Map.entry("pop", 2L));
+        lexicon.add(Map.entry("star", 3L));
+        lexicon.add(Map.entry("stop", 4L));
+        lexicon.add(Map.entry("top", 5L));
+
+        final var fst = buildFST(lexicon);
+        assertEquals(10, fst.numStates());
+        for (Map.Entry<String, Long> entry : lexicon) {
+            assertEquals(entry.getValue(), fst.getOrDefault(entry.getKey().getBytes(), -1));
+        }
+        assertEquals(false, fst.contains("mo".getBytes()));
+        assertEquals(true, fst.contains("moth".getBytes()));
+    }
+
+    @Test
+    public void testBuildWithRandomKeys() {
+        final var random = new Random(42);
+        final TreeMap<String, Long> lexicon = new TreeMap<>();
+        for (int i = 0; i < 10000; i++) {
+            final var key = new StringBuilder();
+            final int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(4)));
+            }
+            lexicon.put(key.toString(), (long) random.nextInt(1000));
+        }
+
+        final var builder = new LongFSTBuilder();
+        for (Map.Entry<String, Long> entry : lexicon.entrySet()) {
+            builder.add(entry.getKey().getBytes(), entry.getValue());
+        }
+        final var fst = builder.finish();
+        for (Map.Entry<String, Long> entry : lexicon.entrySet()) {
+            assertEquals(entry.getValue(), fst.getOrDefault(entry.getKey().getBytes(), -1));
+        }
+        assertEquals(-1L, fst.getOrDefault("aaaaaaaaa".getBytes(), -1));
+
+        // the builder can be reused
+        builder.add("x".getBytes(), 1);
+        assertEquals(1L, builder.finish().getOrDefault("x".getBytes(), -1));
+    }
+}
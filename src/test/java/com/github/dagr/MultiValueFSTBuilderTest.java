@@ -0,0 +1,77 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+public class MultiValueFSTBuilderTest {
+    List<Integer> values(MultiValueFST<Integer> fst, String key) {
+        final ValueList<Integer> values = fst.newValueList();
+        final List<Integer> result = new ArrayList<>();
+        if (fst.get(key.getBytes(), values)) {
+            while (values.next()) {
+                result.add(values.value());
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        final var builder = new MultiValueFSTBuilder<Integer>(new IntegerFSTBuilder());
+        final var fst = builder.build(List.of(Map.entry("bank", 1), Map.entry("bank", 2), Map.entry("bat", 3),
+                Map.entry("bow", 4), Map.entry("bow", 5), Map.entry("bow", 6)).stream()
+                .map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue())));
+
+        assertEquals(List.of(1, 2), values(fst, "bank"));
+        assertEquals(List.of(3), values(fst, "bat"));
+        assertEquals(List.of(4, 5, 6), values(fst, "bow"));
+        assertEquals(List.of(), values(fst, "ba"));
+        assertEquals(List.of(), values(fst, "box"));
+
+        final ValueList<Integer> values = fst.newValueList();
+        assertEquals(true, fst.get("bow".getBytes(), values));
+        assertEquals(3, values.size());
+        assertEquals(false, fst.get("x".getBytes(), values));
+        assertEquals(0, values.size());
+        assertEquals(false, values.next());
+    }
+
+    @Test
+    public void testEqualListsShareStates() {
+        final var builder = new MultiValueFSTBuilder<byte[]>(new BytesFSTBuilder());
+        final var fst = builder.build(List.of(Map.entry("ax", "n"), Map.entry("ax", "v"), Map.entry("bx", "n"),
+                Map.entry("bx", "v")).stream()
+                .map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue().getBytes())));
+        // "ax" and "bx" end at the same final state, which holds the list
+        assertEquals(3, fst.fst().states.size());
+        for (FrozenState<byte[]> state : fst.fst().states) {
+            assertEquals(state.isFinal, state.getStateOutput().isPresent());
+            for (int i = 0; i < state.numTransitions(); i++) {
+                assertEquals(Optional.empty(), state.transitionOutput(i));
+            }
+        }
+
+        final var values = fst.newValueList();
+        assertEquals(true, fst.get("bx".getBytes(), values));
+        assertEquals(true, values.next());
+        assertEquals("n", new String(values.value()));
+        assertEquals(true, values.next());
+        assertEquals("v", new String(values.value()));
+        assertEquals(false, values.next());
+    }
+
+    @Test
+    public void testDuplicateKeysAreRejectedBySingleValueBuilder() {
+        assertThrows(IllegalArgumentException.class, () -> new IntegerFSTBuilder().build(
+                List.of(Map.entry("a".getBytes(), 1), Map.entry("a".getBytes(), 2)).stream()));
+        assertThrows(IllegalArgumentException.class, () -> new IntegerFSTBuilder().build(
+                List.of(Map.entry("b".getBytes(), 1), Map.entry("a".getBytes(), 2)).stream()));
+    }
+}
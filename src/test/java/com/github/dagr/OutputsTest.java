@@ -0,0 +1,105 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OutputsTest {
+    @TempDir
+    Path tempDir;
+
+    <T> FST<T> build(Outputs<T> outputs, List<Map.Entry<String, T>> entries) {
+        return new OutputsFSTBuilder<T>(outputs)
+                .build(entries.stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue())));
+    }
+
+    <T> void assertRoundTrip(Outputs<T> outputs, T output) {
+        final ByteBuffer buffer = ByteBuffer.allocate(outputs.outputSize(output) + 1);
+        buffer.put((byte) 0xFF);
+        outputs.write(output, buffer);
+        assertEquals(buffer.capacity(), buffer.position());
+        assertEquals(output, outputs.read(buffer, 1));
+    }
+
+    @Test
+    public void testLongOutputs() throws IOException {
+        final var outputs = new LongOutputs();
+        final var fst = build(outputs, List.of(Map.entry("mop", 0L), Map.entry("moth", 1L), Map.entry("pop", 2L),
+                Map.entry("star", 300L), Map.entry("stop", 1L << 40)));
+        assertEquals(Optional.of(0L), fst.get("mop".getBytes()));
+        assertEquals(Optional.of(1L), fst.get("moth".getBytes()));
+        assertEquals(Optional.of(300L), fst.get("star".getBytes()));
+        assertEquals(Optional.of(1L << 40), fst.get("stop".getBytes()));
+        assertEquals(Optional.empty(), fst.get("mo".getBytes()));
+
+        final Path path = tempDir.resolve("fst.bin");
+        new DoubleArrayCompiler<Long>().compile(fst).save(path);
+        final var loaded = DoubleArrayFST.load(path, new OutputsFSTBuilder<Long>(outputs));
+        assertEquals(Optional.of(0L), loaded.get("mop".getBytes()));
+        assertEquals(Optional.of(2L), loaded.get("pop".getBytes()));
+        assertEquals(Optional.of(1L << 40), loaded.get("stop".getBytes()));
+
+        assertRoundTrip(outputs, 0L);
+        assertRoundTrip(outputs, 127L);
+        assertRoundTrip(outputs, 128L);
+        assertRoundTrip(outputs, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testByteSequenceOutputs() {
+        final var outputs = new ByteSequenceOutputs();
+        final var fst = build(outputs, List.of(Map.entry("a", "1".getBytes()), Map.entry("ab", "12".getBytes()),
+                Map.entry("ac", new byte[0]), Map.entry("ad", "12".getBytes())));
+        assertArrayEquals("1".getBytes(), fst.get("a".getBytes()).get());
+        assertArrayEquals("12".getBytes(), fst.get("ab".getBytes()).get());
+        assertArrayEquals(new byte[0], fst.get("ac".getBytes()).get());
+        assertArrayEquals("12".getBytes(), fst.get("ad".getBytes()).get());
+        assertEquals(Optional.empty(), fst.get("b".getBytes()));
+
+        final ByteBuffer buffer = ByteBuffer.allocate(outputs.outputSize("abc".getBytes()));
+        outputs.write("abc".getBytes(), buffer);
+        assertArrayEquals("abc".getBytes(), outputs.read(buffer, 0));
+
+        // arrays compare by identity, so equal contents are interned
+        final var interner = outputs.newInterner();
+        final byte[] first = interner.apply("12".getBytes());
+        assertSame(first, interner.apply("12".getBytes()));
+        assertNull(new LongOutputs().newInterner());
+    }
+
+    @Test
+    public void testPairOutputs() {
+        final var outputs = new PairOutputs<Long, Long>(new LongOutputs(), new LongOutputs());
+        final var fst = build(outputs, List.of(Map.entry("car", outputs.pair(0L, 5L)),
+                Map.entry("cart", outputs.pair(1L, 3L)), Map.entry("cat", outputs.pair(2L, 7L))));
+        assertEquals(Optional.of(outputs.pair(0L, 5L)), fst.get("car".getBytes()));
+        assertEquals(Optional.of(outputs.pair(1L, 3L)), fst.get("cart".getBytes()));
+        assertEquals(Optional.of(outputs.pair(2L, 7L)), fst.get("cat".getBytes()));
+        assertEquals(Optional.empty(), fst.get("ca".getBytes()));
+
+        assertEquals(outputs.noOutput(), outputs.pair(0L, 0L));
+        assertRoundTrip(outputs, outputs.pair(300L, 1L));
+    }
+
+    @Test
+    public void testNoOutputs() {
+        final var outputs = new NoOutputs();
+        final var fst = build(outputs, List.of(Map.entry("mop", NoOutputs.NO_OUTPUT),
+                Map.entry("moth", NoOutputs.NO_OUTPUT), Map.entry("pop", NoOutputs.NO_OUTPUT)));
+        assertEquals(Optional.of(NoOutputs.NO_OUTPUT), fst.get("moth".getBytes()));
+        assertEquals(Optional.of(NoOutputs.NO_OUTPUT), fst.get("pop".getBytes()));
+        assertEquals(Optional.empty(), fst.get("mo".getBytes()));
+        assertEquals(0, outputs.outputSize(NoOutputs.NO_OUTPUT));
+    }
+}
@@ -83,4 +83,41 @@ public class StateTest {
             assertNotEquals(state1, state2);
         }
     }
+
+    @Test
+    public void testFindInSparseFrozenState() {
+        final FrozenState<Integer> next = new FrozenState<Integer>(true, createEmptyTransition(), Optional.empty());
+        final List<Transition<Integer>> transitions = createEmptyTransition();
+        // out of order, and including labels above 127
+        for (int label : new int[] { 0xC3, 'b', 0x80, 'a' }) {
+            transitions.add(new Transition<Integer>((byte) label, next, Optional.of(label)));
+        }
+        final FrozenState<Integer> state = new FrozenState<Integer>(false, transitions, Optional.empty());
+        assertEquals((byte) 'a', state.label(0));
+        assertEquals((byte) 0xC3, state.label(3));
+        for (int label : new int[] { 0xC3, 'b', 0x80, 'a' }) {
+            assertEquals(Optional.of(label), state.transitOutput((byte) label));
+        }
+        assertEquals(-1, state.find((byte) 'c'));
+        assertEquals(-1, state.find((byte) 0xFF));
+    }
+
+    @Test
+    public void testFindInDenseFrozenState() {
+        final FrozenState<Integer> next = new FrozenState<Integer>(true, createEmptyTransition(), Optional.empty());
+        final List<Transition<Integer>> transitions = createEmptyTransition();
+        for (int label = 0; label < 256; label += 3) {
+            transitions.add(new Transition<Integer>((byte) label, next, Optional.of(label)));
+        }
+        final FrozenState<Integer> state = new FrozenState<Integer>(false, transitions, Optional.empty());
+        for (int label = 0; label < 256; label++) {
+            final int i = state.find((byte) label);
+            if (label % 3 == 0) {
+                assertEquals(label / 3, i);
+                assertEquals((byte) label, state.label(i));
+            } else {
+                assertEquals(-1, i);
+            }
+        }
+    }
 }
@@ -0,0 +1,165 @@
+package com.github.dagr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class UpdatableDictionaryTest {
+    @Test
+    public void testPutAndRemoveAcrossLayers() {
+        // merges run in the calling thread
+        final var dictionary = new UpdatableDictionary<Integer>(new IntegerFSTBuilder(), Runnable::run);
+        dictionary.setFlushThreshold(2);
+        dictionary.setMergeFactor(3);
+
+        dictionary.put("jan".getBytes(), 31);
+        assertEquals(Optional.of(31), dictionary.get("jan".getBytes()));
+        dictionary.put("feb".getBytes(), 28);
+        // flushed into a segment
+        assertEquals(1, dictionary.numSegments());
+        assertEquals(Optional.of(28), dictionary.get("feb".getBytes()));
+
+        dictionary.put("feb".getBytes(), 29);
+        dictionary.remove("jan".getBytes());
+        assertEquals(2, dictionary.numSegments());
+        assertEquals(Optional.of(29), dictionary.get("feb".getBytes()));
+        assertEquals(Optional.empty(), dictionary.get("jan".getBytes()));
+
+        dictionary.put("jan".getBytes(), 30);
+        assertEquals(Optional.of(30), dictionary.get("jan".getBytes()));
+        dictionary.put("mar".getBytes(), 31);
+        // three segments are merged into one
+        assertEquals(1, dictionary.numSegments());
+        assertEquals(Optional.of(30), dictionary.get("jan".getBytes()));
+        assertEquals(Optional.of(29), dictionary.get("feb".getBytes()));
+        assertEquals(Optional.of(31), dictionary.get("mar".getBytes()));
+        assertEquals(Optional.empty(), dictionary.get("apr".getBytes()));
+
+        dictionary.remove("mar".getBytes());
+        assertEquals(Optional.empty(), dictionary.get("mar".getBytes()));
+        dictionary.flush();
+        assertEquals(Optional.empty(), dictionary.get("mar".getBytes()));
+    }
+
+    @Test
+    public void testBackgroundMerge() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final var dictionary = new UpdatableDictionary<Integer>(new IntegerFSTBuilder(), executor);
+        dictionary.setFlushThreshold(16);
+        dictionary.setMergeFactor(4);
+
+        final TreeMap<String, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            final String key = Integer.toString(i * 7919 % 1000);
+            if (i % 5 == 0) {
+                dictionary.remove(key.getBytes());
+                expected.remove(key);
+            } else {
+                dictionary.put(key.getBytes(), i);
+                expected.put(key, i);
+            }
+        }
+        dictionary.flush();
+        // a merge may start another one when it ends, so wait for the last
+        while (dictionary.isMerging()) {
+            Thread.sleep(1);
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 1000; i++) {
+            final String key = Integer.toString(i);
+            assertEquals(Optional.ofNullable(expected.get(key)), dictionary.get(key.getBytes()));
+        }
+    }
+
+    @Test
+    public void testRejectedMerge() {
+        final var dictionary = new UpdatableDictionary<Integer>(new IntegerFSTBuilder(), command -> {
+            throw new RejectedExecutionException();
+        });
+        dictionary.setFlushThreshold(1);
+        dictionary.setMergeFactor(2);
+
+        dictionary.put("jan".getBytes(), 31);
+        dictionary.put("feb".getBytes(), 28);
+        dictionary.put("mar".getBytes(), 31);
+        // segments are kept unmerged, and merges are tried again
+        assertEquals(3, dictionary.numSegments());
+        assertEquals(false, dictionary.isMerging());
+        assertEquals(Optional.of(28), dictionary.get("feb".getBytes()));
+    }
+
+    @Test
+    public void testUpdatesOverBase() {
+        final TreeMap<String, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.put(String.format("%04d", i), i);
+        }
+        final var base = new IntegerFSTBuilder().build(
+                expected.entrySet().stream().map(entry -> Map.entry(entry.getKey().getBytes(), entry.getValue())));
+        final var dictionary = new UpdatableDictionary<Integer>(new IntegerFSTBuilder(), base, Runnable::run);
+        dictionary.setFlushThreshold(4);
+        dictionary.setMergeFactor(3);
+        assertEquals(Optional.of(42), dictionary.get("0042".getBytes()));
+
+        for (int i = 0; i < 200; i++) {
+            final String key = String.format("%04d", i * 37 % 1100);
+            if (i % 3 == 0) {
+                dictionary.remove(key.getBytes());
+                expected.remove(key);
+            } else {
+                dictionary.put(key.getBytes(), -i);
+                expected.put(key, -i);
+            }
+        }
+        // small segments are merged among themselves, not into the base
+        assertSame(base, dictionary.segments().get(0).entries);
+        assertEquals(true, dictionary.numSegments() < 10);
+        for (int i = 0; i < 1100; i++) {
+            final String key = String.format("%04d", i);
+            assertEquals(Optional.ofNullable(expected.get(key)), dictionary.get(key.getBytes()));
+        }
+    }
+
+    @Test
+    public void testMergeAgainAfterMerge() {
+        // merges run when the test runs them
+        final Queue<Runnable> merges = new ArrayDeque<>();
+        final var dictionary = new UpdatableDictionary<Integer>(new IntegerFSTBuilder(), merges::add);
+        dictionary.setFlushThreshold(1);
+        dictionary.setMergeFactor(2);
+
+        dictionary.put("a".getBytes(), 1);
+        dictionary.put("b".getBytes(), 2);
+        assertEquals(1, merges.size());
+        // segments pile up while the merge is pending
+        dictionary.put("c".getBytes(), 3);
+        dictionary.put("d".getBytes(), 4);
+        assertEquals(1, merges.size());
+        assertEquals(4, dictionary.numSegments());
+
+        merges.poll().run();
+        assertEquals(3, dictionary.numSegments());
+        // the finished merge checked the trigger again
+        assertEquals(1, merges.size());
+        while (!merges.isEmpty()) {
+            merges.poll().run();
+        }
+        assertEquals(1, dictionary.numSegments());
+        for (String key : new String[] { "a", "b", "c", "d" }) {
+            assertEquals(Optional.of(key.charAt(0) - 'a' + 1), dictionary.get(key.getBytes()));
+        }
+    }
+}